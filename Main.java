@@ -1,7 +1,30 @@
+import server.InventoryServer;
+import service.TenantRegistry;
+import util.Metrics;
 import ui.MenuUI;
+import java.util.Arrays;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        // Timers and counters under set:type=... in JConsole / VisualVM (registered
+        // off the main thread: starting the platform MBean server takes a few hundred ms)
+        Thread jmx = new Thread(Metrics::registerMBeans, "metrics-jmx");
+        jmx.setDaemon(true);
+        jmx.start();
+        // java Main --server [port] serves the inventory over HTTP instead of the menu
+        if (args.length > 0 && args[0].equals("--server")) {
+            InventoryServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // java Main --tenant <id> opens the menu on one tenant's inventory (data/tenants/<id>)
+        if (args.length > 1 && args[0].equals("--tenant")) {
+            // The menu closes the tenant's manager itself when it exits
+            new TenantRegistry().withTenant(args[1], manager -> {
+                new MenuUI(manager).start();
+                return null;
+            });
+            return;
+        }
         MenuUI menu = new MenuUI();
         menu.start();
     }
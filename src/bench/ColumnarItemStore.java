@@ -0,0 +1,345 @@
+package bench;
+
+import model.GroceryItem;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+
+// Column-oriented item storage for very large inventories. Each row is a slot
+// in parallel int arrays (epoch days, quantity, dictionary-coded category) and
+// names are UTF-8 bytes in one shared byte arena, so a row costs about 24 bytes
+// plus its name instead of an item object, a String and a byte[] per item.
+// GroceryItem instances exist only as flyweight views created on read; a view
+// reads and writes its row in place. Deleted rows go on a free list and are
+// reused; the name arena is compacted once it is more than half garbage.
+//
+// A prototype for MemoryFootprint only: GroceryManager's trees and indexes hold
+// item references, so backing it with rows would mean keying them on row ids.
+public class ColumnarItemStore implements Iterable<GroceryItem> {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int DELETED = -1;
+    
+    // Columns, indexed by row
+    private int[] nameStart = new int[INITIAL_CAPACITY];
+    private int[] nameLength = new int[INITIAL_CAPACITY]; // DELETED for a free row
+    private int[] categoryId = new int[INITIAL_CAPACITY];
+    private int[] purchaseDay = new int[INITIAL_CAPACITY];
+    private int[] expiryDay = new int[INITIAL_CAPACITY];
+    private int[] quantity = new int[INITIAL_CAPACITY];
+    
+    private byte[] names = new byte[INITIAL_CAPACITY * 16];
+    private int namesUsed;
+    private int namesGarbage;
+    
+    // Category dictionary: id -> name and name -> id
+    private final List<String> categories = new ArrayList<>();
+    private final Map<String, Integer> categoryIds = new HashMap<>();
+    
+    private int rowLimit; // rows [0, rowLimit) have been used
+    private int size;
+    private int[] freeRows = new int[16];
+    private int freeCount;
+    
+    // Flyweight over one row; equal to any other view of the same row
+    private class Row extends GroceryItem {
+        private final int row;
+        
+        private Row(int row) {
+            super(null, null, 0, 0, 0);
+            this.row = row;
+        }
+        
+        @Override
+        public String getName() { return nameAt(row); }
+        @Override
+        public void setName(String name) { storeName(row, name); }
+        
+        @Override
+        public String getCategory() { return categories.get(categoryId[row]); }
+        @Override
+        public void setCategory(String category) { categoryId[row] = categoryCode(category); }
+        
+        @Override
+        public void setPurchaseDate(LocalDate date) { purchaseDay[row] = (int) date.toEpochDay(); }
+        @Override
+        public void setExpiryDate(LocalDate date) { expiryDay[row] = (int) date.toEpochDay(); }
+        
+        @Override
+        public int getPurchaseDay() { return purchaseDay[row]; }
+        @Override
+        public int getExpiryDay() { return expiryDay[row]; }
+        
+        @Override
+        public int getQuantity() { return quantity[row]; }
+        @Override
+        public void setQuantity(int value) { quantity[row] = value; }
+        
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Row && ((Row) other).row == row && ((Row) other).store() == store();
+        }
+        
+        @Override
+        public int hashCode() {
+            return row;
+        }
+        
+        private ColumnarItemStore store() {
+            return ColumnarItemStore.this;
+        }
+    }
+    
+    // Copy an item into a row; returns the row id
+    public int add(GroceryItem item) {
+        int row = freeCount > 0 ? freeRows[--freeCount] : newRow();
+        storeName(row, item.getName());
+        categoryId[row] = categoryCode(item.getCategory());
+        purchaseDay[row] = item.getPurchaseDay();
+        expiryDay[row] = item.getExpiryDay();
+        quantity[row] = item.getQuantity();
+        size++;
+        return row;
+    }
+    
+    public void addAll(Collection<GroceryItem> items) {
+        for (GroceryItem item : items) {
+            add(item);
+        }
+    }
+    
+    public boolean remove(int row) {
+        if (!isLive(row)) {
+            return false;
+        }
+        namesGarbage += nameLength[row];
+        nameLength[row] = DELETED;
+        if (freeCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+        }
+        freeRows[freeCount++] = row;
+        size--;
+        return true;
+    }
+    
+    // View of a row; it reflects later changes to the row and goes stale once the row is removed
+    public GroceryItem get(int row) {
+        if (!isLive(row)) {
+            throw new IndexOutOfBoundsException("No item at row " + row);
+        }
+        return new Row(row);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    // Views over the live rows, in row order
+    @Override
+    public Iterator<GroceryItem> iterator() {
+        return new Iterator<>() {
+            private int next = advance(0);
+            
+            @Override
+            public boolean hasNext() {
+                return next < rowLimit;
+            }
+            
+            @Override
+            public GroceryItem next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Row row = new Row(next);
+                next = advance(next + 1);
+                return row;
+            }
+            
+            private int advance(int from) {
+                while (from < rowLimit && nameLength[from] == DELETED) {
+                    from++;
+                }
+                return from;
+            }
+        };
+    }
+    
+    // Column scans: these touch only the int arrays and create no views
+    
+    public long countExpired(long today) {
+        long count = 0;
+        for (int row = 0; row < rowLimit; row++) {
+            if (nameLength[row] != DELETED && expiryDay[row] < today) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    public long countExpiringWithin(long today, int days) {
+        long count = 0;
+        for (int row = 0; row < rowLimit; row++) {
+            long daysLeft = expiryDay[row] - today;
+            if (nameLength[row] != DELETED && daysLeft >= 0 && daysLeft <= days) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    public long totalQuantity() {
+        long total = 0;
+        for (int row = 0; row < rowLimit; row++) {
+            if (nameLength[row] != DELETED) {
+                total += quantity[row];
+            }
+        }
+        return total;
+    }
+    
+    // Rows whose expiry falls in [today, today + days]
+    public int[] rowsExpiringWithin(long today, int days) {
+        int[] rows = new int[16];
+        int count = 0;
+        for (int row = 0; row < rowLimit; row++) {
+            long daysLeft = expiryDay[row] - today;
+            if (nameLength[row] != DELETED && daysLeft >= 0 && daysLeft <= days) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+    
+    // Rows in a category (exact name), in row order
+    public int[] rowsInCategory(String category) {
+        Integer id = categoryIds.get(category);
+        if (id == null) {
+            return new int[0];
+        }
+        int[] rows = new int[16];
+        int count = 0;
+        for (int row = 0; row < rowLimit; row++) {
+            if (nameLength[row] != DELETED && categoryId[row] == id) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+    
+    // Live rows ordered by expiry day (ties by row), sorted as packed longs
+    public int[] rowsByExpiry() {
+        long[] keys = new long[size];
+        int count = 0;
+        for (int row = 0; row < rowLimit; row++) {
+            if (nameLength[row] != DELETED) {
+                keys[count++] = ((long) expiryDay[row] << 32) | row;
+            }
+        }
+        Arrays.sort(keys);
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = (int) keys[i];
+        }
+        return rows;
+    }
+    
+    // Item count per category name
+    public Map<String, Long> categoryCounts() {
+        long[] counts = new long[categories.size()];
+        for (int row = 0; row < rowLimit; row++) {
+            if (nameLength[row] != DELETED) {
+                counts[categoryId[row]]++;
+            }
+        }
+        Map<String, Long> result = new HashMap<>();
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0) {
+                result.put(categories.get(id), counts[id]);
+            }
+        }
+        return result;
+    }
+    
+    // Approximate heap bytes held by the columns, name arena and dictionary
+    public long estimatedBytes() {
+        long columns = 6L * (16 + 4L * nameStart.length);
+        long arena = 16 + names.length;
+        long free = 16 + 4L * freeRows.length;
+        long dictionary = 0;
+        for (String category : categories) {
+            dictionary += 40 + category.length() + 48; // String + byte[] + map entry and list slot
+        }
+        return columns + arena + free + dictionary;
+    }
+    
+    private boolean isLive(int row) {
+        return row >= 0 && row < rowLimit && nameLength[row] != DELETED;
+    }
+    
+    private int newRow() {
+        if (rowLimit == nameStart.length) {
+            int capacity = rowLimit * 2;
+            nameStart = Arrays.copyOf(nameStart, capacity);
+            nameLength = Arrays.copyOf(nameLength, capacity);
+            categoryId = Arrays.copyOf(categoryId, capacity);
+            purchaseDay = Arrays.copyOf(purchaseDay, capacity);
+            expiryDay = Arrays.copyOf(expiryDay, capacity);
+            quantity = Arrays.copyOf(quantity, capacity);
+        }
+        return rowLimit++;
+    }
+    
+    private int categoryCode(String category) {
+        Integer id = categoryIds.get(category);
+        if (id == null) {
+            id = categories.size();
+            categories.add(category);
+            categoryIds.put(category, id);
+        }
+        return id;
+    }
+    
+    private String nameAt(int row) {
+        return new String(names, nameStart[row], nameLength[row], StandardCharsets.UTF_8);
+    }
+    
+    // Append the name to the arena; a replaced name becomes garbage
+    private void storeName(int row, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameLength[row] > 0) {
+            namesGarbage += nameLength[row];
+            nameLength[row] = 0;
+        }
+        if (namesGarbage > namesUsed / 2 && namesGarbage > INITIAL_CAPACITY) {
+            compactNames();
+        }
+        if (namesUsed + bytes.length > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, namesUsed + bytes.length));
+        }
+        System.arraycopy(bytes, 0, names, namesUsed, bytes.length);
+        nameStart[row] = namesUsed;
+        nameLength[row] = bytes.length;
+        namesUsed += bytes.length;
+    }
+    
+    // Rewrite the arena with only the live names, in row order
+    private void compactNames() {
+        byte[] compacted = new byte[Math.max(INITIAL_CAPACITY, namesUsed - namesGarbage) * 2];
+        int used = 0;
+        for (int row = 0; row < rowLimit; row++) {
+            if (nameLength[row] > 0) {
+                System.arraycopy(names, nameStart[row], compacted, used, nameLength[row]);
+                nameStart[row] = used;
+                used += nameLength[row];
+            }
+        }
+        names = compacted;
+        namesUsed = used;
+        namesGarbage = 0;
+    }
+}
@@ -0,0 +1,88 @@
+package bench;
+
+import model.GroceryItem;
+import util.FileHandler;
+import util.Journal;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+// Checks that a journal compaction interrupted by a crash loads the inventory
+// exactly once. The compaction writes the new snapshot, marks the rotated log
+// as folded into it, renames the snapshot into place and deletes the log; this
+// recreates the files a crash leaves after the rename (snapshot published, log
+// still there) and before it (old snapshot, marked log), plus a marked log that
+// a later rotation appended more records to. Exits with status 1 on the first
+// mismatch.
+//
+//   java bench.CompactionCrashCheck   (-Dset.snapshot=binary checks the binary snapshot)
+public class CompactionCrashCheck {
+    public static void main(String[] args) throws IOException {
+        File dataDir = Files.createTempDirectory("set-crash").toFile();
+        File snapshot = new File(dataDir, "binary".equalsIgnoreCase(System.getProperty("set.snapshot")) ? "items.bin" : "items.txt");
+        File compacting = new File(dataDir, "items.journal.compacting");
+        
+        // First compaction: the snapshot holds apples x5 and bread x3
+        Journal journal = FileHandler.openJournal(dataDir);
+        GroceryItem apples = new GroceryItem("Apples", "Fruits", 20000, 20010, 5);
+        GroceryItem bread = new GroceryItem("Bread", "Bakery", 20000, 20004, 3);
+        journal.append(Journal.ADD, apples.toFileString());
+        journal.append(Journal.ADD, bread.toFileString());
+        compact(journal, List.of(apples, bread), dataDir);
+        byte[] oldSnapshot = Files.readAllBytes(snapshot.toPath());
+        
+        // Second compaction folds in "use 2 apples" and "add cheese x4"; bread is deleted after it
+        GroceryItem cheese = new GroceryItem("Cheese", "Dairy", 20000, 20030, 4);
+        journal.append(Journal.CONSUME, "2,Apples");
+        journal.append(Journal.ADD, cheese.toFileString());
+        apples.setQuantity(3);
+        compact(journal, List.of(apples, bread, cheese), dataDir);
+        journal.append(Journal.DELETE, "Bread");
+        journal.close();
+        expect(!compacting.exists(), "the rotated log outlived a finished compaction");
+        List<String> expected = List.of("Apples x3", "Cheese x4");
+        expectLoads(dataDir, expected, "after a clean compaction");
+        
+        // Crash after the rename: the log is marked with the published snapshot's stamp
+        String stamp = FileHandler.snapshotStamp(dataDir);
+        Journal.appendRecord(compacting, Journal.CONSUME, "2,Apples");
+        Journal.appendRecord(compacting, Journal.ADD, cheese.toFileString());
+        Journal.appendRecord(compacting, Journal.FOLDED, stamp);
+        expectLoads(dataDir, expected, "after a crash between the snapshot rename and the log deletion");
+        
+        // A later rotation appends to the leftover log; only the records after the marker apply
+        Journal.appendRecord(compacting, Journal.CONSUME, "1,Apples");
+        expectLoads(dataDir, List.of("Apples x2", "Cheese x4"), "with records appended after the marker");
+        
+        // Crash before the rename: the old snapshot is still in place, so the whole log applies
+        Files.delete(compacting.toPath());
+        Journal.appendRecord(compacting, Journal.CONSUME, "2,Apples");
+        Journal.appendRecord(compacting, Journal.ADD, cheese.toFileString());
+        Journal.appendRecord(compacting, Journal.FOLDED, stamp);
+        Files.write(snapshot.toPath(), oldSnapshot);
+        expectLoads(dataDir, expected, "after a crash before the snapshot rename");
+        System.out.println("Compaction crash checks passed");
+    }
+    
+    private static void compact(Journal journal, List<GroceryItem> items, File dataDir) {
+        FileHandler.compact(journal, items, dataDir);
+        FileHandler.awaitCompaction(dataDir);
+    }
+    
+    private static void expectLoads(File dataDir, List<String> expected, String when) {
+        List<String> loaded = new ArrayList<>();
+        for (GroceryItem item : FileHandler.loadItems(dataDir)) {
+            loaded.add(item.getName() + " x" + item.getQuantity());
+        }
+        Collections.sort(loaded);
+        expect(loaded.equals(expected), when + ": loaded " + loaded + ", expected " + expected);
+    }
+    
+    private static void expect(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package bench;
+
+import model.GroceryItem;
+import service.ConcurrentGroceryManager;
+import service.GroceryManager;
+import util.DayClock;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Consistency check for ConcurrentGroceryManager under concurrent readers and
+// writers. Each writer owns its own product names and mirrors every add,
+// consume, quantity update and delete in a local model of its lots (FEFO, one
+// expiry day per lot so the order is unambiguous), checking every return value.
+// Readers check that each listing they get is a consistent snapshot. After
+// every round, with all threads stopped, the manager must agree with the
+// models: item count, on-hand per name, the three sorted views, the name and
+// category indexes, the expired listing and the running statistics. The last
+// round also reloads the inventory from disk. Exits with status 1 on the first
+// violation.
+//
+//   java bench.ConcurrencyStress [writers] [readers] [seconds per round] [rounds]
+//                                (default: 4 4 3 3; set.* storage properties apply)
+public class ConcurrencyStress {
+    private static final int NAMES_PER_WRITER = 50;
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 15);
+    
+    private static final AtomicReference<String> failure = new AtomicReference<>();
+    private static final AtomicLong operations = new AtomicLong();
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long roundMillis = (args.length > 2 ? Long.parseLong(args[2]) : 3) * 1000;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        File dataDir = Files.createTempDirectory("set-stress").toFile();
+        DayClock clock = DayClock.fixed(TODAY);
+        
+        System.out.println("Data dir: " + dataDir + ", storage: " + System.getProperty("set.storage", "text")
+            + ", " + writers + " writer(s), " + readers + " reader(s)");
+        ConcurrentGroceryManager manager = new ConcurrentGroceryManager(clock, dataDir);
+        List<Writer> models = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            models.add(new Writer(i, manager));
+        }
+        for (int round = 1; round <= rounds; round++) {
+            long before = operations.get();
+            long deadline = System.currentTimeMillis() + roundMillis;
+            CountDownLatch done = new CountDownLatch(writers + readers);
+            for (Writer writer : models) {
+                start("stress-writer", done, () -> {
+                    while (System.currentTimeMillis() < deadline && failure.get() == null) {
+                        writer.step();
+                    }
+                });
+            }
+            for (int i = 0; i < readers; i++) {
+                start("stress-reader", done, () -> {
+                    while (System.currentTimeMillis() < deadline && failure.get() == null) {
+                        read(manager);
+                    }
+                });
+            }
+            done.await();
+            failIfBroken();
+            verify(manager, models, "round " + round);
+            System.out.printf("Round %d: %,d operations, %,d items, invariants hold%n",
+                round, operations.get() - before, manager.getItemCount());
+        }
+        manager.close();
+        
+        GroceryManager reloaded = new GroceryManager(clock, dataDir);
+        verify(reloaded, models, "reload");
+        reloaded.close();
+        System.out.println("Reloaded inventory matches");
+    }
+    
+    private static void start(String name, CountDownLatch done, Runnable body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (RuntimeException e) {
+                fail(Thread.currentThread().getName() + " threw " + e);
+            } finally {
+                done.countDown();
+            }
+        }, name);
+        thread.start();
+    }
+    
+    // One writer's names and, per name, its lots as {expiryDay, quantity} in expiry order
+    private static class Writer {
+        private final int id;
+        private final GroceryManager manager;
+        private final Map<String, List<int[]>> lots = new HashMap<>();
+        private int nextExpiry;
+        
+        Writer(int id, GroceryManager manager) {
+            this.id = id;
+            this.manager = manager;
+        }
+        
+        void step() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            String name = "W" + id + " item " + random.nextInt(NAMES_PER_WRITER);
+            List<int[]> model = lots.computeIfAbsent(name, key -> new ArrayList<>());
+            int choice = random.nextInt(10);
+            if (choice < 5) {
+                // Unique expiry days (some already past) keep the FEFO order unambiguous
+                int expiry = (int) TODAY.toEpochDay() - 5_000 + nextExpiry++;
+                int quantity = 1 + random.nextInt(10);
+                expect(manager.addItem(new GroceryItem(name, "Category " + (id + nextExpiry) % 7,
+                    expiry - 30, expiry, quantity)), "addItem(" + name + ") returned false");
+                model.add(new int[] { expiry, quantity });
+            } else if (choice < 8) {
+                int quantity = 1 + random.nextInt(12);
+                int used = manager.consume(name, quantity);
+                int expected = consume(model, quantity);
+                expect(used == expected, "consume(" + name + ", " + quantity + ") used " + used + ", expected " + expected);
+            } else if (choice < 9) {
+                int quantity = 1 + random.nextInt(10);
+                expect(manager.updateQuantity(name, quantity) == !model.isEmpty(), "updateQuantity(" + name + ") result");
+                for (int[] lot : model) {
+                    lot[1] = quantity;
+                }
+            } else {
+                expect(manager.deleteItem(name) == !model.isEmpty(), "deleteItem(" + name + ") result");
+                model.clear();
+            }
+            operations.incrementAndGet();
+        }
+        
+        long onHand(String name) {
+            long total = 0;
+            for (int[] lot : lots.getOrDefault(name, List.of())) {
+                total += lot[1];
+            }
+            return total;
+        }
+    }
+    
+    // Earliest expiry first; lots that run out are removed
+    private static int consume(List<int[]> model, int quantity) {
+        int remaining = quantity;
+        Iterator<int[]> lots = model.iterator();
+        while (remaining > 0 && lots.hasNext()) {
+            int[] lot = lots.next();
+            if (lot[1] > remaining) {
+                lot[1] -= remaining;
+                remaining = 0;
+            } else {
+                remaining -= lot[1];
+                lots.remove();
+            }
+        }
+        return quantity - remaining;
+    }
+    
+    // Checks that hold for any single snapshot, whatever the writers are doing
+    private static void read(GroceryManager manager) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (random.nextInt(5)) {
+            case 0 -> expectSorted(manager.sortByExpiryDate(), Comparator.comparingInt(GroceryItem::getExpiryDay), "sortByExpiryDate");
+            case 1 -> expectSorted(manager.sortByName(), Comparator.comparing(GroceryItem::getName, String.CASE_INSENSITIVE_ORDER), "sortByName");
+            case 2 -> {
+                List<GroceryItem> all = manager.getAllItems();
+                expect(identitySet(all).size() == all.size(), "getAllItems listed an item twice");
+            }
+            case 3 -> {
+                String name = "W" + random.nextInt(8) + " item " + random.nextInt(NAMES_PER_WRITER);
+                List<GroceryItem> lots = manager.getLots(name);
+                for (GroceryItem lot : lots) {
+                    expect(lot.getName().equalsIgnoreCase(name), "getLots(" + name + ") returned " + lot.getName());
+                }
+                expectSorted(lots, Comparator.comparingInt(GroceryItem::getExpiryDay), "getLots");
+            }
+            default -> {
+                Map<String, Object> stats = manager.getStatistics();
+                expect(((Number) stats.get("totalItems")).intValue() >= 0, "negative item count");
+            }
+        }
+        operations.incrementAndGet();
+    }
+    
+    // With all threads stopped, every view of the manager must agree with the writers' models
+    private static void verify(GroceryManager manager, List<Writer> models, String when) {
+        int expectedCount = 0;
+        long expectedQuantity = 0;
+        long expectedExpired = 0;
+        int today = (int) TODAY.toEpochDay();
+        for (Writer writer : models) {
+            for (Map.Entry<String, List<int[]>> name : writer.lots.entrySet()) {
+                expectedCount += name.getValue().size();
+                expectedQuantity += writer.onHand(name.getKey());
+                for (int[] lot : name.getValue()) {
+                    if (lot[0] < today) {
+                        expectedExpired++;
+                    }
+                }
+                check(manager.getQuantityOnHand(name.getKey()) == writer.onHand(name.getKey()), when,
+                    "on hand of " + name.getKey() + " is " + manager.getQuantityOnHand(name.getKey())
+                        + ", expected " + writer.onHand(name.getKey()));
+                check(manager.getLots(name.getKey()).size() == name.getValue().size(), when,
+                    "lots of " + name.getKey() + ": " + manager.getLots(name.getKey()).size() + ", expected " + name.getValue().size());
+                check(identitySet(manager.findByName(name.getKey())).equals(identitySet(manager.getLots(name.getKey()))), when,
+                    "findByName and getLots disagree for " + name.getKey());
+            }
+        }
+        List<GroceryItem> all = manager.getAllItems();
+        Set<GroceryItem> items = identitySet(all);
+        check(manager.getItemCount() == expectedCount && all.size() == expectedCount && items.size() == expectedCount, when,
+            "item count " + manager.getItemCount() + " / listed " + all.size() + ", expected " + expectedCount);
+        check(identitySet(manager.sortByExpiryDate()).equals(items), when, "sortByExpiryDate holds other items");
+        check(identitySet(manager.sortByName()).equals(items), when, "sortByName holds other items");
+        check(identitySet(manager.sortByCategory()).equals(items), when, "sortByCategory holds other items");
+        
+        Set<GroceryItem> byCategory = identitySet(List.of());
+        for (String category : manager.getAllCategories()) {
+            byCategory.addAll(manager.searchByCategory(category));
+        }
+        check(byCategory.equals(items), when, "category index holds " + byCategory.size() + " items, expected " + items.size());
+        
+        check(manager.getExpiredItems().size() == expectedExpired && manager.getExpiredCount() == expectedExpired, when,
+            "expired " + manager.getExpiredItems().size() + " / counted " + manager.getExpiredCount() + ", expected " + expectedExpired);
+        Map<String, Object> stats = manager.getStatistics();
+        check(((Number) stats.get("totalItems")).longValue() == expectedCount, when, "statistics totalItems " + stats.get("totalItems"));
+        check(((Number) stats.get("totalQuantity")).longValue() == expectedQuantity, when,
+            "statistics totalQuantity " + stats.get("totalQuantity") + ", expected " + expectedQuantity);
+    }
+    
+    private static Set<GroceryItem> identitySet(Collection<GroceryItem> items) {
+        Set<GroceryItem> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(items);
+        return set;
+    }
+    
+    private static void expectSorted(List<GroceryItem> items, Comparator<GroceryItem> order, String view) {
+        for (int i = 1; i < items.size(); i++) {
+            expect(order.compare(items.get(i - 1), items.get(i)) <= 0, view + " is out of order at " + i);
+        }
+    }
+    
+    private static void expect(boolean condition, String message) {
+        if (!condition) {
+            fail(message);
+        }
+    }
+    
+    private static void fail(String message) {
+        failure.compareAndSet(null, message);
+    }
+    
+    private static void check(boolean condition, String when, String message) {
+        if (!condition) {
+            fail(when + ": " + message);
+            failIfBroken();
+        }
+    }
+    
+    private static void failIfBroken() {
+        if (failure.get() != null) {
+            System.err.println("FAILED: " + failure.get());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package bench;
+
+import model.GroceryItem;
+import util.ItemCsv;
+import util.ItemCsvReader;
+import util.Journal;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Checks that items.txt files written before RFC 4180 quoting still load
+// (a quote inside an unquoted field is a literal) and that quoted fields
+// round-trip, also as journal records (which must stay on one line), as do
+// quantities across the whole int range. Exits with status 1 on the first mismatch.
+//
+//   java bench.CsvCompatibilityCheck
+public class CsvCompatibilityCheck {
+    public static void main(String[] args) throws IOException {
+        List<GroceryItem> legacy = read("12\" Sub,Bakery,2024-01-01,2024-02-01,1\n"
+            + "Milk,Dairy,2024-01-02,2024-01-09,2\n");
+        expect(legacy.size() == 2, "legacy file: expected 2 items but read " + legacy.size());
+        expect(legacy.get(0).getName().equals("12\" Sub"), "legacy name read as " + legacy.get(0).getName());
+        expect(legacy.get(1).getName().equals("Milk"), "line after the legacy name read as " + legacy.get(1).getName());
+        
+        List<GroceryItem> items = new ArrayList<>();
+        items.add(new GroceryItem("12\" Sub", "Bakery", 19723, 19754, 1));
+        items.add(new GroceryItem("Salt, coarse", "Condiments & Spices", 19723, 20088, 3));
+        items.add(new GroceryItem("Say \"cheese\"", "Dairy", 19723, 19730, 4));
+        items.add(new GroceryItem("Two\nLines", "Other", 19723, 19730, 5));
+        items.add(new GroceryItem("Bulk rice", "Grains", 19723, 20088, Integer.MAX_VALUE));
+        items.add(new GroceryItem("Overdrawn", "Other", 19723, 19730, Integer.MIN_VALUE));
+        StringBuilder text = new StringBuilder();
+        for (GroceryItem item : items) {
+            ItemCsv.write(item, text);
+            text.append('\n');
+        }
+        List<GroceryItem> reread = read(text.toString());
+        expect(reread.size() == items.size(), "round trip: expected " + items.size() + " items but read " + reread.size());
+        for (int i = 0; i < items.size(); i++) {
+            expect(reread.get(i).getName().equals(items.get(i).getName())
+                    && reread.get(i).getQuantity() == items.get(i).getQuantity(),
+                "round trip: " + items.get(i).getName() + " x" + items.get(i).getQuantity()
+                    + " read as " + reread.get(i).getName() + " x" + reread.get(i).getQuantity());
+            StringBuilder line = new StringBuilder();
+            Journal.formatRecord(Journal.ADD, ItemCsv.format(items.get(i)), line);
+            expect(line.indexOf("\n") == line.length() - 1, "journal record spans lines: " + line);
+            String[] record = Journal.parseRecord(line.substring(0, line.length() - 1));
+            expect(record[0].equals(Journal.ADD) && ItemCsv.parse(record[1]).getName().equals(items.get(i).getName()),
+                "journal round trip: " + items.get(i).getName() + " read as " + record[1]);
+        }
+        expect(read("Too many,Other,2024-01-01,2024-02-01,2147483648\n", 1).isEmpty(),
+            "a quantity past Integer.MAX_VALUE was accepted");
+        
+        String[] legacyRecord = Journal.parseRecord("D,C:\\new");
+        expect(legacyRecord[1].equals("C:\\new"), "legacy journal record read as " + legacyRecord[1]);
+        System.out.println("CSV compatibility checks passed");
+    }
+    
+    private static List<GroceryItem> read(String text) throws IOException {
+        return read(text, 0);
+    }
+    
+    private static List<GroceryItem> read(String text, int expectedErrors) throws IOException {
+        List<GroceryItem> items = new ArrayList<>();
+        try (ItemCsvReader reader = new ItemCsvReader(new StringReader(text))) {
+            GroceryItem item;
+            while ((item = reader.next()) != null) {
+                items.add(item);
+            }
+            expect(reader.getErrorCount() == expectedErrors, "parse errors: " + reader.getErrors());
+        }
+        return items;
+    }
+    
+    private static void expect(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}
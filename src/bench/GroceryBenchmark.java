@@ -0,0 +1,201 @@
+package bench;
+
+import model.GroceryItem;
+import service.GroceryManager;
+import util.FileHandler;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.Supplier;
+
+// Micro-benchmarks for GroceryManager queries and FileHandler load/save.
+// Each operation gets a timed warm-up and a timed measurement; results are
+// reported as average time per operation. Runs against a temporary data
+// directory so the real inventory is never touched.
+//
+// Like JMH, every size runs in fresh JVMs (forks) so JIT decisions and heap
+// state from one run do not leak into the next, and results go into a
+// blackhole so the JIT cannot drop the measured work. The table shows the
+// mean over forks and the spread between the slowest and fastest fork.
+//
+// This is a plain main rather than a JMH module: the project has no Maven or
+// Gradle build to pull JMH in, and it ships no third-party jars, so it copies
+// the three JMH habits that matter here. Warm-up: every operation runs untimed
+// for bench.warmupMillis so the JIT compiles it before bench.measureMillis of
+// timing. Isolation: each size runs in bench.forks fresh JVMs. Dead code: each
+// result goes to Blackhole.consume, which the JIT cannot drop because it cannot
+// prove the volatile `publish` flag stays false.
+//
+//   java bench.GroceryBenchmark [size ...]      (default: 1000 100000 1000000)
+//
+// Properties: bench.warmupMillis (500), bench.measureMillis (1000),
+// bench.forks (2; 0 runs in this JVM), plus the usual set.* storage properties
+// (journal mode is the default here, since rewrite mode makes every add/delete
+// an O(n) save). JVM options such as -Xmx are passed on to the forks.
+public class GroceryBenchmark {
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmupMillis", 500);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measureMillis", 1000);
+    private static final int FORKS = Integer.getInteger("bench.forks", 2);
+    private static final String FORK_FLAG = "--fork";
+    private static final String RESULT_PREFIX = "RESULT ";
+    
+    private static final Blackhole blackhole = new Blackhole();
+    // Set in a fork: print machine-readable results for the parent
+    private static boolean forked;
+    
+    // Consumes results without a volatile write per operation (after JMH's Blackhole):
+    // the JIT cannot prove `publish` stays false, so every result must be computed
+    static final class Blackhole {
+        private volatile boolean publish;
+        private Object last;
+        
+        void consume(Object result) {
+            if (publish) {
+                last = result;
+            }
+        }
+    }
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 2 && args[0].equals(FORK_FLAG)) {
+            forked = true;
+            run(Integer.parseInt(args[1]));
+            return;
+        }
+        if (System.getProperty("set.data.dir") == null) {
+            File dataDir = Files.createTempDirectory("set-bench").toFile();
+            System.setProperty("set.data.dir", dataDir.getPath());
+        }
+        if (System.getProperty("set.storage") == null) {
+            System.setProperty("set.storage", "journal");
+        }
+        
+        int[] sizes = { 1_000, 100_000, 1_000_000 };
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        
+        System.out.println("Data dir: " + System.getProperty("set.data.dir")
+            + ", storage: " + System.getProperty("set.storage")
+            + ", snapshot: " + System.getProperty("set.snapshot", "text"));
+        System.out.printf("%-22s %10s %14s %10s %14s%n", "Benchmark", "Items", "us/op", "+/-", "ops/s");
+        for (int size : sizes) {
+            if (FORKS == 0) {
+                run(size);
+            } else {
+                runForks(size);
+            }
+        }
+    }
+    
+    // Run one size in FORKS fresh JVMs, one after another, and report the mean per operation
+    private static void runForks(int size) throws IOException, InterruptedException {
+        Map<String, List<Double>> results = new LinkedHashMap<>();
+        for (int fork = 0; fork < FORKS; fork++) {
+            List<String> command = new ArrayList<>();
+            command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.add("-Dset.data.dir=" + System.getProperty("set.data.dir"));
+            command.add("-Dset.storage=" + System.getProperty("set.storage"));
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(GroceryBenchmark.class.getName());
+            command.add(FORK_FLAG);
+            command.add(Integer.toString(size));
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(RESULT_PREFIX)) {
+                        String[] fields = line.substring(RESULT_PREFIX.length()).split(" ");
+                        results.computeIfAbsent(fields[0], name -> new ArrayList<>()).add(Double.parseDouble(fields[1]));
+                    } else {
+                        System.out.println(line);
+                    }
+                }
+            }
+            if (process.waitFor() != 0) {
+                throw new IOException("Benchmark fork for " + size + " items exited with " + process.exitValue());
+            }
+        }
+        for (Map.Entry<String, List<Double>> result : results.entrySet()) {
+            List<Double> forks = result.getValue();
+            double mean = forks.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+            double spread = (Collections.max(forks) - Collections.min(forks)) / 2;
+            report(result.getKey(), size, mean, spread);
+        }
+    }
+    
+    private static void run(int size) {
+        InventoryGenerator generator = new InventoryGenerator(42);
+        List<GroceryItem> items = generator.generate(size);
+        FileHandler.deleteJournal();
+        FileHandler.saveItems(items);
+        GroceryManager manager = new GroceryManager();
+        
+        // Mutations: add fresh items, then delete them again by name
+        List<String> added = new ArrayList<>();
+        measure("addItem", size, () -> {
+            GroceryItem item = generator.next();
+            item.setName("bench item " + added.size());
+            added.add(item.getName());
+            return manager.addItem(item);
+        });
+        int[] next = { 0 };
+        measure("deleteItem", size, added.size() / 2, () -> manager.deleteItem(added.get(next[0]++)));
+        
+        measure("searchByName", size, () -> manager.searchByName(generator.nextQuery()));
+        measure("getExpiringSoonItems", size, manager::getExpiringSoonItems);
+        measure("sortByExpiryDate", size, manager::sortByExpiryDate);
+        measure("sortByName", size, manager::sortByName);
+        measure("getAllItems", size, manager::getAllItems);
+        measure("getStatistics", size, manager::getStatistics);
+        manager.close();
+        FileHandler.deleteJournal();
+        
+        // Persistence
+        measure("saveItems", size, () -> {
+            FileHandler.saveItems(items);
+            return items;
+        });
+        measure("loadItems", size, FileHandler::loadItems);
+    }
+    
+    private static void measure(String name, int size, Supplier<?> operation) {
+        measure(name, size, Long.MAX_VALUE, operation);
+    }
+    
+    // maxOperations caps each phase, for operations that consume prepared input
+    private static void measure(String name, int size, long maxOperations, Supplier<?> operation) {
+        runFor(WARMUP_MILLIS, maxOperations, operation);
+        long[] result = runFor(MEASURE_MILLIS, maxOperations, operation);
+        double microsPerOp = result[1] / 1_000.0 / result[0];
+        if (forked) {
+            System.out.println(RESULT_PREFIX + name + " " + microsPerOp);
+        } else {
+            report(name, size, microsPerOp, 0);
+        }
+    }
+    
+    private static void report(String name, int size, double microsPerOp, double spread) {
+        System.out.printf("%-22s %10d %14.2f %10.2f %14.0f%n", name, size, microsPerOp, spread, 1_000_000 / microsPerOp);
+    }
+    
+    // Returns {operations, elapsed nanos}; always runs at least one operation
+    private static long[] runFor(long millis, long maxOperations, Supplier<?> operation) {
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        long start = System.nanoTime();
+        long operations = 0;
+        do {
+            blackhole.consume(operation.get());
+            operations++;
+        } while (System.nanoTime() < deadline && operations < maxOperations);
+        return new long[] { operations, System.nanoTime() - start };
+    }
+}
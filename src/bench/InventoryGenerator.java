@@ -0,0 +1,54 @@
+package bench;
+
+import model.GroceryItem;
+import service.GroceryManager;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Synthetic inventories for benchmarks: categories from GroceryManager's
+// common list, names drawn from a fixed pool, purchases within the last
+// month and shelf lives up to two months (so some items are expired).
+public class InventoryGenerator {
+    private static final String[] NAME_WORDS = {
+        "Milk", "Eggs", "Bread", "Tomatoes", "Chicken", "Yogurt", "Apples", "Rice",
+        "Pasta", "Cheese", "Juice", "Chips", "Peas", "Ketchup", "Beans", "Butter"
+    };
+    
+    private final Random random;
+    private final List<String> categories = GroceryManager.getCommonCategories();
+    private final int distinctNames;
+    
+    public InventoryGenerator(long seed, int distinctNames) {
+        this.random = new Random(seed);
+        this.distinctNames = distinctNames;
+    }
+    
+    public InventoryGenerator(long seed) {
+        this(seed, 5_000);
+    }
+    
+    public List<GroceryItem> generate(int count) {
+        List<GroceryItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(next());
+        }
+        return items;
+    }
+    
+    public GroceryItem next() {
+        LocalDate today = LocalDate.now();
+        int nameId = random.nextInt(distinctNames);
+        String name = NAME_WORDS[nameId % NAME_WORDS.length] + " " + nameId;
+        String category = categories.get(random.nextInt(categories.size()));
+        LocalDate purchaseDate = today.minusDays(random.nextInt(30));
+        LocalDate expiryDate = purchaseDate.plusDays(random.nextInt(60));
+        return new GroceryItem(name, category, purchaseDate, expiryDate, 1 + random.nextInt(20));
+    }
+    
+    // A query term that matches part of the generated names
+    public String nextQuery() {
+        return NAME_WORDS[random.nextInt(NAME_WORDS.length)].substring(0, 3).toLowerCase();
+    }
+}
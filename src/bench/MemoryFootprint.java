@@ -0,0 +1,70 @@
+package bench;
+
+import model.GroceryItem;
+import java.util.ArrayList;
+import java.util.List;
+
+// Heap used by generated inventories held as ArrayList<GroceryItem> versus the
+// ColumnarItemStore prototype. Each layout is built from the same seed and measured as
+// the growth in used heap after a forced GC, so run with a heap large enough
+// for one layout at a time (e.g. -Xmx2g for a million items).
+//
+//   java bench.MemoryFootprint [size]      (default: 1000000)
+public class MemoryFootprint {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        
+        long baseline = usedHeap();
+        List<GroceryItem> list = new InventoryGenerator(42).generate(size);
+        long listBytes = usedHeap() - baseline;
+        check(list.size(), size);
+        list = null;
+        
+        baseline = usedHeap();
+        ColumnarItemStore store = new ColumnarItemStore();
+        InventoryGenerator generator = new InventoryGenerator(42);
+        for (int i = 0; i < size; i++) {
+            store.add(generator.next());
+        }
+        long storeBytes = usedHeap() - baseline;
+        check(store.size(), size);
+        
+        System.out.printf("%-26s %10s %14s %12s%n", "Layout", "Items", "Heap (MB)", "Bytes/item");
+        report("ArrayList<GroceryItem>", size, listBytes);
+        report("ColumnarItemStore", size, storeBytes);
+        report("  (estimated by store)", size, store.estimatedBytes());
+        System.out.printf("Columnar store uses %.1f%% of the list's heap%n", 100.0 * storeBytes / listBytes);
+    }
+    
+    private static void report(String name, int size, long bytes) {
+        System.out.printf("%-26s %10d %14.1f %12.1f%n", name, size, bytes / 1048576.0, (double) bytes / size);
+    }
+    
+    // Keeps the measured structure reachable until after the measurement
+    private static void check(int actual, int expected) {
+        if (actual != expected) {
+            throw new IllegalStateException("expected " + expected + " items but built " + actual);
+        }
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Repeat until a GC no longer frees anything
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if (now >= used) {
+                return now;
+            }
+            used = now;
+        }
+        return used;
+    }
+}
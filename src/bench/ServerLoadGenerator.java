@@ -0,0 +1,167 @@
+package bench;
+
+import model.GroceryItem;
+import server.InventoryServer;
+import service.ConcurrentGroceryManager;
+import service.GroceryManager;
+import util.FileHandler;
+import util.Json;
+import util.LatencyHistogram;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Load generator for the HTTP API. Starts an InventoryServer on a free
+// localhost port over a generated inventory (in a temporary data directory),
+// then drives it from client threads with a mix of searches, expiry queries,
+// stats, adds and deletes, and reports p50/p99 latency and throughput.
+//
+//   java bench.ServerLoadGenerator [clients] [items]     (default: 16 100000)
+//
+// Properties: bench.warmupMillis (2000), bench.measureMillis (10000).
+public class ServerLoadGenerator {
+    private static final long WARMUP_MILLIS = Long.getLong("bench.warmupMillis", 2000);
+    private static final long MEASURE_MILLIS = Long.getLong("bench.measureMillis", 10000);
+    private static final String[] OPERATIONS = { "search", "expiring", "expired", "stats", "add", "delete" };
+    // Cumulative percentages matching OPERATIONS
+    private static final int[] MIX = { 60, 75, 80, 85, 95, 100 };
+    
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        if (System.getProperty("set.data.dir") == null) {
+            File dataDir = Files.createTempDirectory("set-load").toFile();
+            System.setProperty("set.data.dir", dataDir.getPath());
+        }
+        if (System.getProperty("set.storage") == null) {
+            System.setProperty("set.storage", "journal");
+        }
+        
+        FileHandler.deleteJournal();
+        FileHandler.saveItems(new InventoryGenerator(42).generate(size));
+        GroceryManager manager = new ConcurrentGroceryManager();
+        InventoryServer server = new InventoryServer(manager, 0);
+        server.start();
+        String base = "http://localhost:" + server.getPort();
+        System.out.println("Server on " + base + " with " + size + " items, " + clients + " clients");
+        
+        try {
+            run(base, clients, WARMUP_MILLIS);
+            Map<String, LatencyHistogram> results = run(base, clients, MEASURE_MILLIS);
+            report(results, MEASURE_MILLIS);
+            System.out.println("\nServer-side latency:");
+            server.getLatencies().forEach((route, histogram) ->
+                System.out.printf("  %-22s %s%n", route, histogram.summary()));
+        } finally {
+            server.stop();
+            manager.close();
+            FileHandler.deleteJournal();
+        }
+    }
+    
+    // Drive the server for the given time; returns client-side latency per operation and in total
+    private static Map<String, LatencyHistogram> run(String base, int clients, long millis)
+            throws InterruptedException {
+        Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+        for (String operation : OPERATIONS) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+        LatencyHistogram total = new LatencyHistogram();
+        latencies.put("total", total);
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong errors = new AtomicLong();
+        AtomicInteger nextName = new AtomicInteger();
+        
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                InventoryGenerator generator = new InventoryGenerator(ThreadLocalRandom.current().nextLong());
+                Deque<String> added = new ArrayDeque<>();
+                while (running.get()) {
+                    String operation = pick(ThreadLocalRandom.current().nextInt(100));
+                    if (operation.equals("delete") && added.isEmpty()) {
+                        operation = "add";
+                    }
+                    HttpRequest request = request(base, operation, generator, added, nextName);
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() >= 400) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    latencies.get(operation).record(elapsed);
+                    total.record(elapsed);
+                }
+            }, "load-client-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        Thread.sleep(millis);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (errors.get() > 0) {
+            System.out.println("Errors: " + errors.get());
+        }
+        return latencies;
+    }
+    
+    private static HttpRequest request(String base, String operation, InventoryGenerator generator,
+                                       Deque<String> added, AtomicInteger nextName) {
+        HttpRequest.Builder builder;
+        switch (operation) {
+            case "search" -> builder = HttpRequest.newBuilder(URI.create(base + "/items/search?q="
+                + generator.nextQuery() + "&limit=20"));
+            case "expiring" -> builder = HttpRequest.newBuilder(URI.create(base + "/items/expiring?limit=100"));
+            case "expired" -> builder = HttpRequest.newBuilder(URI.create(base + "/items/expired?limit=100"));
+            case "stats" -> builder = HttpRequest.newBuilder(URI.create(base + "/stats"));
+            case "add" -> {
+                GroceryItem item = generator.next();
+                item.setName("load item " + nextName.getAndIncrement());
+                added.add(item.getName());
+                StringBuilder body = new StringBuilder();
+                Json.appendItem(body, item);
+                builder = HttpRequest.newBuilder(URI.create(base + "/items"))
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString()));
+            }
+            default -> builder = HttpRequest.newBuilder(URI.create(base + "/items/"
+                + URLEncoder.encode(added.poll(), StandardCharsets.UTF_8).replace("+", "%20"))).DELETE();
+        }
+        return builder.build();
+    }
+    
+    private static String pick(int percent) {
+        for (int i = 0; i < MIX.length; i++) {
+            if (percent < MIX[i]) {
+                return OPERATIONS[i];
+            }
+        }
+        return OPERATIONS[0];
+    }
+    
+    private static void report(Map<String, LatencyHistogram> latencies, long millis) {
+        System.out.printf("%n%-10s %10s %12s %10s %10s %10s%n", "Operation", "Requests", "Req/s", "p50 ms", "p99 ms", "max ms");
+        latencies.forEach((name, histogram) -> System.out.printf("%-10s %10d %12.0f %10.3f %10.3f %10.3f%n", name, histogram.getCount(),
+            histogram.getCount() * 1000.0 / millis, histogram.getPercentileNanos(50) / 1e6,
+            histogram.getPercentileNanos(99) / 1e6, histogram.getMaxNanos() / 1e6));
+    }
+}
@@ -0,0 +1,26 @@
+package model;
+
+// Expiry classification of an item relative to a given day
+public enum ExpiryStatus {
+    EXPIRED("EXPIRED"),
+    ALERT("ALERT"),
+    OK("");
+    
+    private final String label;
+    
+    ExpiryStatus(String label) {
+        this.label = label;
+    }
+    
+    // Text shown in the status column
+    public String getLabel() {
+        return label;
+    }
+    
+    public static ExpiryStatus of(GroceryItem item, long today, int thresholdDays) {
+        if (item.isExpired(today)) {
+            return EXPIRED;
+        }
+        return item.isExpiringSoon(thresholdDays, today) ? ALERT : OK;
+    }
+}
@@ -1,33 +1,47 @@
 package model;
 
+import util.DayClock;
+import util.ItemCsv;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 
 public class GroceryItem {
     private String name;
     private String category;
-    private LocalDate purchaseDate;
-    private LocalDate expiryDate;
+    // Dates are kept as epoch days so expiry checks are integer comparisons
+    private int purchaseDay;
+    private int expiryDay;
     private int quantity;
     
     public GroceryItem(String name, String category, LocalDate purchaseDate, 
                       LocalDate expiryDate, int quantity) {
+        this(name, category, (int) purchaseDate.toEpochDay(), (int) expiryDate.toEpochDay(), quantity);
+    }
+    
+    public GroceryItem(String name, String category, int purchaseDay, int expiryDay, int quantity) {
         this.name = name;
         this.category = category;
-        this.purchaseDate = purchaseDate;
-        this.expiryDate = expiryDate;
+        this.purchaseDay = purchaseDay;
+        this.expiryDay = expiryDay;
         this.quantity = quantity;
     }
     
     // Check if item is expiring within specified days
     public boolean isExpiringSoon(int thresholdDays) {
-        long daysUntilExpiry = ChronoUnit.DAYS.between(LocalDate.now(), expiryDate);
+        return isExpiringSoon(thresholdDays, DayClock.system().today());
+    }
+    
+    public boolean isExpiringSoon(int thresholdDays, long today) {
+        long daysUntilExpiry = getExpiryDay() - today;
         return daysUntilExpiry >= 0 && daysUntilExpiry <= thresholdDays;
     }
     
     // Check if item is already expired
     public boolean isExpired() {
-        return expiryDate.isBefore(LocalDate.now());
+        return isExpired(DayClock.system().today());
+    }
+    
+    public boolean isExpired(long today) {
+        return getExpiryDay() < today;
     }
     
     // Getters and Setters
@@ -37,11 +51,14 @@ public class GroceryItem {
     public String getCategory() { return category; }
     public void setCategory(String category) { this.category = category; }
     
-    public LocalDate getPurchaseDate() { return purchaseDate; }
-    public void setPurchaseDate(LocalDate purchaseDate) { this.purchaseDate = purchaseDate; }
+    public LocalDate getPurchaseDate() { return LocalDate.ofEpochDay(getPurchaseDay()); }
+    public void setPurchaseDate(LocalDate purchaseDate) { this.purchaseDay = (int) purchaseDate.toEpochDay(); }
+    
+    public LocalDate getExpiryDate() { return LocalDate.ofEpochDay(getExpiryDay()); }
+    public void setExpiryDate(LocalDate expiryDate) { this.expiryDay = (int) expiryDate.toEpochDay(); }
     
-    public LocalDate getExpiryDate() { return expiryDate; }
-    public void setExpiryDate(LocalDate expiryDate) { this.expiryDate = expiryDate; }
+    public int getPurchaseDay() { return purchaseDay; }
+    public int getExpiryDay() { return expiryDay; }
     
     public int getQuantity() { return quantity; }
     public void setQuantity(int quantity) { this.quantity = quantity; }
@@ -49,23 +66,16 @@ public class GroceryItem {
     @Override
     public String toString() {
         return String.format("%-15s | %-12s | %-12s | %-12s | %3d", 
-                           name, category, purchaseDate, expiryDate, quantity);
+                           getName(), getCategory(), getPurchaseDate(), getExpiryDate(), getQuantity());
     }
     
-    // For file storage
+    // For file storage (CSV, quoted where needed)
     public String toFileString() {
-        return name + "," + category + "," + purchaseDate + "," + expiryDate + "," + quantity;
+        return ItemCsv.format(this);
     }
     
     // Create from file string
     public static GroceryItem fromFileString(String fileString) {
-        String[] parts = fileString.split(",");
-        return new GroceryItem(
-            parts[0], 
-            parts[1], 
-            LocalDate.parse(parts[2]), 
-            LocalDate.parse(parts[3]), 
-            Integer.parseInt(parts[4])
-        );
+        return ItemCsv.parse(fileString);
     }
 }
@@ -0,0 +1,129 @@
+package model;
+
+import java.util.*;
+
+// A product and its lots. Each GroceryItem with the product's name (ignoring
+// case) is one lot with its own expiry date and quantity. Lots are kept in
+// insertion order for listing and in a min-heap on expiry day, so consumption
+// draws First-Expired-First-Out in O(log n) per lot it touches. Removing a lot
+// only marks its heap entry; marked entries are dropped when they reach the top
+// or, all at once, when they make up half the heap.
+public class Product {
+    private final String name;
+    private final Map<GroceryItem, Lot> lots = new LinkedHashMap<>();
+    private final PriorityQueue<Lot> byExpiry = new PriorityQueue<>();
+    private int removedInHeap; // marked entries still in byExpiry
+    private long nextSequence;
+    
+    // Heap entry; lots expiring the same day are used in the order they were added
+    private static class Lot implements Comparable<Lot> {
+        private final GroceryItem item;
+        private final long sequence;
+        private boolean removed;
+        
+        private Lot(GroceryItem item, long sequence) {
+            this.item = item;
+            this.sequence = sequence;
+        }
+        
+        @Override
+        public int compareTo(Lot other) {
+            int byDay = Integer.compare(item.getExpiryDay(), other.item.getExpiryDay());
+            return byDay != 0 ? byDay : Long.compare(sequence, other.sequence);
+        }
+    }
+    
+    public Product(String name) {
+        this.name = name;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void addLot(GroceryItem item) {
+        if (!lots.containsKey(item)) {
+            Lot lot = new Lot(item, nextSequence++);
+            lots.put(item, lot);
+            byExpiry.add(lot);
+        }
+    }
+    
+    // O(1) amortized: the heap entry is marked, and swept out with the others
+    // once marked entries make up half the heap
+    public boolean removeLot(GroceryItem item) {
+        Lot lot = lots.remove(item);
+        if (lot == null) {
+            return false;
+        }
+        lot.removed = true;
+        removedInHeap++;
+        if (removedInHeap > byExpiry.size() / 2) {
+            byExpiry.removeIf(entry -> entry.removed);
+            removedInHeap = 0;
+        }
+        return true;
+    }
+    
+    // Drop every lot at once, for removing the whole product
+    public void clear() {
+        lots.clear();
+        byExpiry.clear();
+        removedInHeap = 0;
+    }
+    
+    // Lots in the order they were added (live view)
+    public Set<GroceryItem> getLots() {
+        return Collections.unmodifiableSet(lots.keySet());
+    }
+    
+    // Lot that would be used next, or null if there are none
+    public GroceryItem nextToExpire() {
+        Lot head = head();
+        return head == null ? null : head.item;
+    }
+    
+    public long getTotalQuantity() {
+        long total = 0;
+        for (GroceryItem lot : lots.keySet()) {
+            total += lot.getQuantity();
+        }
+        return total;
+    }
+    
+    public boolean isEmpty() {
+        return lots.isEmpty();
+    }
+    
+    // Take up to `quantity` units, earliest expiry first. Lots that run out are
+    // removed and added to `emptied` (keeping their last quantity); a lot used
+    // in part has its quantity reduced. Returns the amount actually taken.
+    public int consume(int quantity, List<GroceryItem> emptied) {
+        int remaining = quantity;
+        Lot head;
+        while (remaining > 0 && (head = head()) != null) {
+            GroceryItem lot = head.item;
+            if (lot.getQuantity() > remaining) {
+                lot.setQuantity(lot.getQuantity() - remaining);
+                remaining = 0;
+            } else {
+                remaining -= Math.max(lot.getQuantity(), 0);
+                byExpiry.poll();
+                lots.remove(lot);
+                emptied.add(lot);
+            }
+        }
+        return quantity - remaining;
+    }
+    
+    // Earliest unremoved entry, dropping marked ones above it
+    private Lot head() {
+        Lot head = byExpiry.peek();
+        while (head != null && head.removed) {
+            byExpiry.poll();
+            removedInHeap--;
+            head = byExpiry.peek();
+        }
+        return head;
+    }
+}
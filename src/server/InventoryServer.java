@@ -0,0 +1,392 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import model.GroceryItem;
+import service.ConcurrentGroceryManager;
+import service.GroceryManager;
+import service.ItemsFileWatcher;
+import service.ItemQuery;
+import service.ReplicationPrimary;
+import service.ReplicationStandby;
+import util.Json;
+import util.LatencyHistogram;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+// HTTP/JSON API over a ConcurrentGroceryManager, for store terminals.
+//
+//   POST   /items                       add (JSON item body)        -> 201 item
+//   DELETE /items/{name}                delete every lot with name  -> 200 / 404
+//   GET    /items/search?q=..&limit=N   ranked name search          -> [items]
+//   GET    /items/expiring?days=N       expiring within N days (default: threshold)
+//   GET    /items/expired               expired items
+//                                       (both take an optional limit=N)
+//   GET    /items/query?category=..&contains=..&name=..&days=N|expired=true
+//                 &sort=expiry|name|category|quantity&limit=N   composed query (ItemQuery)
+//   GET    /stats                       getStatistics()
+//   GET    /metrics                     per-route request latency
+//   GET    /replication                 primary/standby position and lag (when replicating)
+//
+// A standby (setReadOnly) answers POST and DELETE with 405: changes go to the primary.
+// Each request runs on its own virtual thread where the JDK has them (21+),
+// otherwise on a cached thread pool.
+public class InventoryServer {
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+    
+    static {
+        // The built-in server writes headers and body separately; with Nagle's
+        // algorithm on, small responses wait ~40ms for the client's delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+    
+    private final GroceryManager manager;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private volatile boolean readOnly;
+    private volatile Supplier<Map<String, Object>> replicationStatus;
+    
+    // Thrown by handlers to answer with an error status
+    private static class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        
+        private final int status;
+        
+        private HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+    
+    public InventoryServer(GroceryManager manager, int port) throws IOException {
+        this.manager = manager;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        
+        server.createContext("/items", timed("items", this::handleItems));
+        server.createContext("/stats", timed("stats", exchange -> {
+            requireMethod(exchange, "GET");
+            StringBuilder body = new StringBuilder(256);
+            Json.appendValue(body, manager.getStatistics());
+            send(exchange, 200, body);
+        }));
+        server.createContext("/metrics", timed("metrics", exchange -> {
+            requireMethod(exchange, "GET");
+            Map<String, Object> metrics = new TreeMap<>();
+            latencies.forEach((route, histogram) -> metrics.put(route, describe(histogram)));
+            StringBuilder body = new StringBuilder(512);
+            Json.appendValue(body, metrics);
+            send(exchange, 200, body);
+        }));
+        server.createContext("/replication", timed("replication", exchange -> {
+            requireMethod(exchange, "GET");
+            Supplier<Map<String, Object>> status = replicationStatus;
+            if (status == null) {
+                throw new HttpError(404, "not replicating");
+            }
+            StringBuilder body = new StringBuilder(256);
+            Json.appendValue(body, status.get());
+            send(exchange, 200, body);
+        }));
+    }
+    
+    // Start a server on the given port with a thread-safe manager over the usual data files
+    // (merging external edits of items.txt with -Dset.watch=file-wins|inventory-wins).
+    // -Dset.replication.port=N ships changes to standbys connecting to port N;
+    // -Dset.replication.primary=host:N serves a read-only standby of that primary.
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        ConcurrentGroceryManager manager = new ConcurrentGroceryManager();
+        String primaryAddress = System.getProperty("set.replication.primary");
+        Integer shippingPort = Integer.getInteger("set.replication.port");
+        ItemsFileWatcher.ConflictPolicy policy = ItemsFileWatcher.ConflictPolicy.configured();
+        if (policy != null && primaryAddress != null) {
+            throw new IllegalArgumentException("set.watch cannot be used on a standby");
+        }
+        if (policy != null) {
+            manager.watchItemsFile(policy, result -> System.out.println("Merged external edit of items.txt: " + result));
+        }
+        ReplicationStandby standby = primaryAddress == null ? null : ReplicationStandby.follow(manager, primaryAddress);
+        ReplicationPrimary primary = shippingPort == null ? null : new ReplicationPrimary(manager, shippingPort);
+        InventoryServer server = new InventoryServer(manager, port);
+        if (standby != null) {
+            server.setReadOnly(true);
+            server.setReplicationStatus(standby::getStatus);
+        } else if (primary != null) {
+            server.setReplicationStatus(primary::getStatus);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            if (standby != null) {
+                standby.close();
+            }
+            if (primary != null) {
+                primary.close();
+            }
+            manager.close();
+        }));
+        server.start();
+        System.out.println("S.E.T server listening on http://localhost:" + server.getPort() + "/");
+        if (primary != null) {
+            System.out.println("Shipping changes to standbys on port " + primary.getPort());
+        }
+        if (standby != null) {
+            System.out.println("Read-only standby of " + primaryAddress);
+        }
+    }
+    
+    public void start() {
+        server.start();
+    }
+    
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+    
+    // Actual port (useful when started on port 0)
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    // Serve a standby: POST and DELETE answer 405
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+    
+    // What GET /replication reports (ReplicationPrimary or ReplicationStandby getStatus)
+    public void setReplicationStatus(Supplier<Map<String, Object>> status) {
+        this.replicationStatus = status;
+    }
+    
+    // Latency per route ("items POST", "items/search GET", ...)
+    public Map<String, LatencyHistogram> getLatencies() {
+        return Collections.unmodifiableMap(latencies);
+    }
+    
+    private void handleItems(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getRawPath();
+        String rest = path.length() > "/items".length() ? path.substring("/items/".length()) : "";
+        Map<String, String> query = parseQuery(exchange.getRequestURI());
+        StringBuilder body = new StringBuilder(1024);
+        
+        if (rest.isEmpty()) {
+            requireMethod(exchange, "POST");
+            requireWritable(exchange);
+            GroceryItem item = Json.parseItem(readBody(exchange));
+            if (item.getName().isBlank()) {
+                throw new HttpError(400, "name must not be empty");
+            }
+            if (item.getExpiryDay() < item.getPurchaseDay()) {
+                throw new HttpError(400, "expiry date cannot be before purchase date");
+            }
+            manager.addItem(item);
+            Json.appendItem(body, item);
+            send(exchange, 201, body);
+        } else if (rest.equals("search")) {
+            requireMethod(exchange, "GET");
+            String term = query.getOrDefault("q", "");
+            int limit = intParameter(query, "limit", DEFAULT_SEARCH_LIMIT);
+            Json.appendItems(body, manager.searchByName(term, limit));
+            send(exchange, 200, body);
+        } else if (rest.equals("expiring")) {
+            requireMethod(exchange, "GET");
+            int days = intParameter(query, "days", manager.getAlertThresholdDays());
+            Json.appendItems(body, limit(manager.getItemsExpiringWithin(days), query));
+            send(exchange, 200, body);
+        } else if (rest.equals("expired")) {
+            requireMethod(exchange, "GET");
+            Json.appendItems(body, limit(manager.getExpiredItems(), query));
+            send(exchange, 200, body);
+        } else if (rest.equals("query")) {
+            requireMethod(exchange, "GET");
+            Json.appendItems(body, manager.query(itemQuery(query)).collect(Collectors.toList()));
+            send(exchange, 200, body);
+        } else {
+            requireMethod(exchange, "DELETE");
+            requireWritable(exchange);
+            String name = URLDecoder.decode(rest, StandardCharsets.UTF_8);
+            if (!manager.deleteItem(name)) {
+                throw new HttpError(404, "no item named '" + name + "'");
+            }
+            // 200 with a body rather than 204: JDK 17's server finishes a bodiless
+            // response twice once the exchange is closed, dropping the keep-alive connection
+            body.append("{\"deleted\":");
+            Json.appendString(body, name);
+            send(exchange, 200, body.append('}'));
+        }
+    }
+    
+    // Wrap a handler with error mapping and a latency histogram per route and method
+    private HttpHandler timed(String context, HttpHandler handler) {
+        return exchange -> {
+            long start = System.nanoTime();
+            try {
+                handler.handle(exchange);
+            } catch (HttpError e) {
+                sendError(exchange, e.status, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (RuntimeException e) {
+                sendError(exchange, 500, "internal error: " + e);
+            } finally {
+                exchange.close();
+                latencies.computeIfAbsent(routeName(context, exchange), key -> new LatencyHistogram())
+                    .record(System.nanoTime() - start);
+            }
+        };
+    }
+    
+    // Collapse /items/{name} so each item name does not get its own histogram
+    private static String routeName(String context, HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        String route = context;
+        if (path.startsWith("/items/")) {
+            String rest = path.substring("/items/".length());
+            route = rest.equals("search") || rest.equals("expiring") || rest.equals("expired") || rest.equals("query")
+                ? "items/" + rest : "items/{name}";
+        }
+        return route + " " + exchange.getRequestMethod();
+    }
+    
+    private static Map<String, Object> describe(LatencyHistogram histogram) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", histogram.getCount());
+        result.put("meanMillis", histogram.getMeanNanos() / 1e6);
+        result.put("p50Millis", histogram.getPercentileNanos(50) / 1e6);
+        result.put("p90Millis", histogram.getPercentileNanos(90) / 1e6);
+        result.put("p99Millis", histogram.getPercentileNanos(99) / 1e6);
+        result.put("maxMillis", histogram.getMaxNanos() / 1e6);
+        return result;
+    }
+    
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!exchange.getRequestMethod().equals(method)) {
+            exchange.getResponseHeaders().set("Allow", method);
+            throw new HttpError(405, "use " + method);
+        }
+    }
+    
+    private void requireWritable(HttpExchange exchange) {
+        if (readOnly) {
+            exchange.getResponseHeaders().set("Allow", "GET");
+            throw new HttpError(405, "read-only standby: send changes to the primary");
+        }
+    }
+    
+    private static ItemQuery itemQuery(Map<String, String> query) {
+        ItemQuery itemQuery = ItemQuery.create();
+        if (query.containsKey("name")) {
+            itemQuery.named(query.get("name"));
+        }
+        if (query.containsKey("contains")) {
+            itemQuery.nameContains(query.get("contains"));
+        }
+        if (query.containsKey("category")) {
+            itemQuery.inCategory(query.get("category"));
+        }
+        if (query.containsKey("days")) {
+            itemQuery.expiringWithin(intParameter(query, "days", 0));
+        } else if ("true".equals(query.get("expired"))) {
+            itemQuery.expired();
+        }
+        switch (query.getOrDefault("sort", "")) {
+            case "" -> { }
+            case "expiry" -> itemQuery.orderBy(ItemQuery.BY_EXPIRY);
+            case "name" -> itemQuery.orderBy(ItemQuery.BY_NAME);
+            case "category" -> itemQuery.orderBy(ItemQuery.BY_CATEGORY);
+            case "quantity" -> itemQuery.orderBy(ItemQuery.BY_QUANTITY_DESC);
+            default -> throw new HttpError(400, "sort must be expiry, name, category or quantity");
+        }
+        return itemQuery.limit(intParameter(query, "limit", DEFAULT_SEARCH_LIMIT));
+    }
+    
+    // First `limit` items when the query has a limit parameter
+    private static List<GroceryItem> limit(List<GroceryItem> items, Map<String, String> query) {
+        int limit = intParameter(query, "limit", Integer.MAX_VALUE);
+        return items.size() > limit ? items.subList(0, limit) : items;
+    }
+    
+    private static int intParameter(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < 0) {
+                throw new HttpError(400, name + " must not be negative");
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, name + " must be an integer");
+        }
+    }
+    
+    private static Map<String, String> parseQuery(URI uri) {
+        Map<String, String> query = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw == null) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+    
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+    
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder body = new StringBuilder("{\"error\":");
+        Json.appendString(body, message == null ? "" : message);
+        body.append('}');
+        send(exchange, status, body);
+    }
+    
+    private static void send(HttpExchange exchange, int status, CharSequence body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+    
+    // Virtual thread per request on JDK 21+ (looked up reflectively so the code
+    // still builds on 17), otherwise a cached pool of platform threads
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "http-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
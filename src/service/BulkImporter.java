@@ -0,0 +1,223 @@
+package service;
+
+import model.GroceryItem;
+import util.ItemCsv;
+import util.ItemCsvReader;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Bulk CSV import and export. Import reads the file in large chunks cut at
+// record boundaries, parses the chunks in parallel on the common fork-join
+// pool, validates each row, then adds everything to the manager in one batch
+// (one persist). Export streams the inventory straight to a file.
+public class BulkImporter {
+    private static final int CHUNK_BYTES = 4 << 20;
+    private static final int MAX_KEPT_ERRORS = 20;
+    
+    // Outcome of an import
+    public static class ImportResult {
+        private final int imported;
+        private final int rejected;
+        private final List<String> errors;
+        private final long elapsedNanos;
+        
+        ImportResult(int imported, int rejected, List<String> errors, long elapsedNanos) {
+            this.imported = imported;
+            this.rejected = rejected;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+        
+        public int getImported() { return imported; }
+        public int getRejected() { return rejected; }
+        public List<String> getErrors() { return errors; }
+        public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+        
+        public double getItemsPerSecond() {
+            return elapsedNanos == 0 ? 0 : imported * 1e9 / elapsedNanos;
+        }
+    }
+    
+    // Parsed rows of one chunk
+    private static class ChunkResult {
+        private final List<GroceryItem> items = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+        private int rejected;
+    }
+    
+    public static ImportResult importCsv(File file, GroceryManager manager) throws IOException {
+        long start = System.nanoTime();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int maxInFlight = pool.getParallelism() * 2;
+        Charset charset = Charset.defaultCharset();
+        
+        Deque<Future<ChunkResult>> pending = new ArrayDeque<>();
+        List<GroceryItem> items = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        int rejected = 0;
+        
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] carry = new byte[0];
+            int line = 1;
+            boolean eof = false;
+            while (!eof) {
+                // Fill a chunk: leftover bytes from the previous one, then fresh input
+                byte[] chunk = Arrays.copyOf(carry, Math.max(CHUNK_BYTES, carry.length * 2));
+                int length = carry.length;
+                while (length < chunk.length) {
+                    int read = in.read(chunk, length, chunk.length - length);
+                    if (read < 0) {
+                        eof = true;
+                        break;
+                    }
+                    length += read;
+                }
+                
+                int boundary = eof ? length : lastRecordEnd(chunk, length);
+                if (boundary == 0 && !eof) {
+                    carry = Arrays.copyOf(chunk, length); // one record longer than a chunk
+                    continue;
+                }
+                carry = Arrays.copyOfRange(chunk, boundary, length);
+                
+                int firstLine = line;
+                line += countLines(chunk, boundary);
+                byte[] bytes = chunk;
+                pending.add(pool.submit(() -> parseChunk(bytes, boundary, firstLine, charset)));
+                
+                // Bound memory: wait for the oldest chunk once enough are queued
+                while (pending.size() > maxInFlight) {
+                    rejected += collect(pending.poll(), items, errors);
+                }
+            }
+        }
+        while (!pending.isEmpty()) {
+            rejected += collect(pending.poll(), items, errors);
+        }
+        
+        int imported = manager.addItems(items);
+        return new ImportResult(imported, rejected, errors, System.nanoTime() - start);
+    }
+    
+    // Write every item as CSV, in expiry order
+    public static int exportCsv(GroceryManager manager, File file) throws IOException {
+        int count = 0;
+        try (Writer writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            StringBuilder line = new StringBuilder(64);
+            Iterator<GroceryItem> items = manager.iterateByExpiryDate();
+            while (items.hasNext()) {
+                line.setLength(0);
+                ItemCsv.write(items.next(), line);
+                line.append(System.lineSeparator());
+                writer.append(line);
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    // Row-level checks on top of parsing; null when the item is acceptable
+    static String validate(GroceryItem item) {
+        if (item.getName().isBlank()) {
+            return "empty name";
+        }
+        if (item.getCategory().isBlank()) {
+            return "empty category";
+        }
+        if (item.getExpiryDay() < item.getPurchaseDay()) {
+            return "expiry date before purchase date";
+        }
+        if (item.getQuantity() < 0) {
+            return "negative quantity";
+        }
+        return null;
+    }
+    
+    private static ChunkResult parseChunk(byte[] bytes, int length, int firstLine, Charset charset)
+            throws IOException {
+        ChunkResult result = new ChunkResult();
+        try (ItemCsvReader reader = new ItemCsvReader(
+                new InputStreamReader(new ByteArrayInputStream(bytes, 0, length), charset), firstLine)) {
+            GroceryItem item;
+            while ((item = reader.next()) != null) {
+                String problem = validate(item);
+                if (problem == null) {
+                    result.items.add(item);
+                } else {
+                    result.rejected++;
+                    if (result.errors.size() < MAX_KEPT_ERRORS) {
+                        result.errors.add(item.getName() + ": " + problem);
+                    }
+                }
+            }
+            result.rejected += reader.getErrorCount();
+            for (String error : reader.getErrors()) {
+                if (result.errors.size() < MAX_KEPT_ERRORS) {
+                    result.errors.add(error);
+                }
+            }
+        }
+        return result;
+    }
+    
+    private static int collect(Future<ChunkResult> future, List<GroceryItem> items, List<String> errors)
+            throws IOException {
+        try {
+            ChunkResult result = future.get();
+            items.addAll(result.items);
+            for (String error : result.errors) {
+                if (errors.size() < MAX_KEPT_ERRORS) {
+                    errors.add(error);
+                }
+            }
+            return result.rejected;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Error parsing chunk: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+    
+    // Offset just past the last line break that is outside quotes (0 if none). As in
+    // ItemCsvReader, only a quote at the start of a field opens a quoted field.
+    private static int lastRecordEnd(byte[] bytes, int length) {
+        boolean inQuotes = false;
+        boolean fieldStart = true;
+        boolean quoteClosed = false;
+        int end = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[i];
+            if (inQuotes) {
+                if (b == '"') {
+                    inQuotes = false;
+                    quoteClosed = true;
+                }
+            } else if (b == '"' && (fieldStart || quoteClosed)) {
+                inQuotes = true;
+                quoteClosed = false;
+            } else {
+                quoteClosed = false;
+                if (b == '\n') {
+                    end = i + 1;
+                }
+            }
+            fieldStart = !inQuotes && (b == ',' || b == '\n');
+        }
+        return end;
+    }
+    
+    private static int countLines(byte[] bytes, int length) {
+        int lines = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+}
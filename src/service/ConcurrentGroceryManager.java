@@ -0,0 +1,509 @@
+package service;
+
+import model.GroceryItem;
+import util.BackupStore;
+import util.DayClock;
+import util.FileHandler;
+import util.Metrics;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Thread-safe GroceryManager for sharing one inventory between threads.
+// Queries run concurrently under a read lock; mutations take the write lock
+// only for the in-memory update. Full rewrites of items.txt happen on a single
+// background writer from a snapshot taken under the read lock, so readers
+// never wait for a save and saves never interleave.
+//
+// openInBackground returns before the inventory is read: a loader thread adds
+// it in batches while queries answer from what has arrived, and mutations wait
+// until loading is done so nothing is saved over a half-loaded inventory.
+public class ConcurrentGroceryManager extends GroceryManager {
+    // Time spent waiting for the lock, separate from the manager.* operation timers
+    private static final Metrics.Timer READ_LOCK_WAIT = Metrics.timer("lock.readWait");
+    private static final Metrics.Timer WRITE_LOCK_WAIT = Metrics.timer("lock.writeWait");
+    private static final Metrics.Timer BACKGROUND_LOAD = Metrics.timer("manager.backgroundLoad");
+    // Items read per batch while loading. Batches are held back until they match
+    // the items already loaded: each write-lock hold merges its items into the
+    // listing trees in time proportional to the whole inventory, so doubling keeps
+    // the total linear while the first items show up at once.
+    private static final int LOAD_BATCH = 4096;
+    
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService saver = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "inventory-saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Set while a save is queued; later mutations ride along with it
+    private final AtomicBoolean savePending = new AtomicBoolean();
+    
+    // Completed once every stored item is loaded (at construction unless loading in the background)
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    private volatile double loadProgress;
+    private volatile boolean closing;
+    private Thread loader;
+    private volatile ItemsFileWatcher watcher;
+    // Pushes expiry alerts; created when the first listener registers (under the write lock)
+    private ExpiryAlertScheduler alerts;
+    
+    public ConcurrentGroceryManager() {
+        super();
+        markLoaded();
+    }
+    
+    public ConcurrentGroceryManager(DayClock clock) {
+        super(clock);
+        markLoaded();
+    }
+    
+    public ConcurrentGroceryManager(DayClock clock, File dataDir) {
+        super(clock, dataDir);
+        markLoaded();
+    }
+    
+    private ConcurrentGroceryManager(DayClock clock, File dataDir, boolean loadNow) {
+        super(clock, dataDir, loadNow);
+    }
+    
+    // Inventory that is still loading when this returns (see whenLoaded)
+    public static ConcurrentGroceryManager openInBackground(DayClock clock, File dataDir) {
+        ConcurrentGroceryManager manager = new ConcurrentGroceryManager(clock, dataDir, false);
+        manager.loader = new Thread(manager::loadInBackground, "inventory-loader");
+        manager.loader.setDaemon(true);
+        manager.loader.start();
+        return manager;
+    }
+    
+    private void loadInBackground() {
+        long start = Metrics.start();
+        try {
+            List<GroceryItem> pending = new ArrayList<>();
+            FileHandler.streamItems(getDataDir(), LOAD_BATCH, (batch, fractionDone) -> {
+                if (closing) {
+                    throw new CancellationException();
+                }
+                pending.addAll(batch);
+                if (pending.size() >= getItemCount()) {
+                    loadPending(pending, fractionDone);
+                }
+            });
+            loadPending(pending, 1);
+            write(() -> {
+                finishLoad();
+                return null;
+            });
+            BACKGROUND_LOAD.stop(start);
+            markLoaded();
+        } catch (CancellationException e) {
+            loaded.cancel(false);
+        } catch (RuntimeException | Error e) {
+            loaded.completeExceptionally(e);
+            throw e;
+        }
+    }
+    
+    private void loadPending(List<GroceryItem> pending, double fractionDone) {
+        write(() -> {
+            loadBatch(pending);
+            return null;
+        });
+        pending.clear();
+        loadProgress = fractionDone;
+    }
+    
+    private void markLoaded() {
+        loadProgress = 1;
+        loaded.complete(null);
+    }
+    
+    @Override
+    public boolean isLoaded() {
+        return loaded.isDone() && !loaded.isCompletedExceptionally();
+    }
+    
+    @Override
+    public double getLoadProgress() {
+        return loadProgress;
+    }
+    
+    // Fails if loading failed or the manager was closed first
+    @Override
+    public CompletableFuture<Void> whenLoaded() {
+        return loaded;
+    }
+    
+    @Override
+    public void awaitLoaded() {
+        try {
+            loaded.join();
+        } catch (CancellationException | CompletionException e) {
+            throw new IllegalStateException("Inventory did not finish loading", e);
+        }
+    }
+    
+    @Override
+    public boolean addItem(GroceryItem item) {
+        return mutate(() -> super.addItem(item));
+    }
+    
+    @Override
+    public int addItems(Collection<GroceryItem> items) {
+        return mutate(() -> super.addItems(items));
+    }
+    
+    @Override
+    public boolean deleteItem(String itemName) {
+        return mutate(() -> super.deleteItem(itemName));
+    }
+    
+    @Override
+    public boolean updateQuantity(String itemName, int quantity) {
+        return mutate(() -> super.updateQuantity(itemName, quantity));
+    }
+    
+    @Override
+    public int consume(String itemName, int quantity) {
+        return mutate(() -> super.consume(itemName, quantity));
+    }
+    
+    @Override
+    public List<GroceryItem> getLots(String itemName) {
+        return read(() -> super.getLots(itemName));
+    }
+    
+    @Override
+    public long getQuantityOnHand(String itemName) {
+        return read(() -> super.getQuantityOnHand(itemName));
+    }
+    
+    @Override
+    public List<GroceryItem> findByName(String name) {
+        return read(() -> super.findByName(name));
+    }
+    
+    @Override
+    public List<GroceryItem> searchByName(String name) {
+        return read(() -> super.searchByName(name));
+    }
+    
+    @Override
+    public List<GroceryItem> searchByName(String name, int limit) {
+        return read(() -> super.searchByName(name, limit));
+    }
+    
+    @Override
+    public List<String> suggestNames(String prefix, int limit) {
+        return read(() -> super.suggestNames(prefix, limit));
+    }
+    
+    @Override
+    public List<GroceryItem> searchByCategory(String category) {
+        return read(() -> super.searchByCategory(category));
+    }
+    
+    @Override
+    public List<GroceryItem> getExpiringSoonItems() {
+        return read(super::getExpiringSoonItems);
+    }
+    
+    @Override
+    public List<GroceryItem> getItemsExpiringWithin(int days) {
+        return read(() -> super.getItemsExpiringWithin(days));
+    }
+    
+    @Override
+    public List<GroceryItem> getExpiredItems() {
+        return read(super::getExpiredItems);
+    }
+    
+    @Override
+    public List<GroceryItem> sortByExpiryDate() {
+        return read(super::sortByExpiryDate);
+    }
+    
+    // The planner's lazy stream would outlive the read lock, so the result
+    // (at most the query's limit) is collected under it
+    @Override
+    public Stream<GroceryItem> query(ItemQuery query) {
+        return read(() -> super.query(query).collect(Collectors.toList())).stream();
+    }
+    
+    @Override
+    public String explain(ItemQuery query) {
+        return read(() -> super.explain(query));
+    }
+    
+    // Lazy views would outlive the read lock, so these iterate over a snapshot or copy
+    @Override
+    public Iterator<GroceryItem> iterateByExpiryDate() {
+        return sortByExpiryDate().iterator();
+    }
+    
+    @Override
+    public Iterator<GroceryItem> iterateExpired() {
+        return getExpiredItems().iterator();
+    }
+    
+    @Override
+    public Iterator<GroceryItem> iterateExpiringSoon() {
+        return getExpiringSoonItems().iterator();
+    }
+    
+    @Override
+    public int getItemCount() {
+        return read(super::getItemCount);
+    }
+    
+    @Override
+    public long getExpiredCount() {
+        return read(super::getExpiredCount);
+    }
+    
+    @Override
+    public long getExpiringSoonCount() {
+        return read(super::getExpiringSoonCount);
+    }
+    
+    @Override
+    public List<GroceryItem> sortByCategory() {
+        return read(super::sortByCategory);
+    }
+    
+    @Override
+    public List<GroceryItem> sortByName() {
+        return read(super::sortByName);
+    }
+    
+    @Override
+    public List<GroceryItem> getAllItems() {
+        return read(super::getAllItems);
+    }
+    
+    @Override
+    public List<String> getAllCategories() {
+        return read(super::getAllCategories);
+    }
+    
+    @Override
+    public List<String> getAvailableCategories() {
+        return read(super::getAvailableCategories);
+    }
+    
+    @Override
+    public Map<String, Object> getStatistics() {
+        return read(super::getStatistics);
+    }
+    
+    @Override
+    public void setAlertThresholdDays(int days) {
+        write(() -> {
+            super.setAlertThresholdDays(days);
+            if (alerts != null) {
+                alerts.setThresholdDays(days);
+            }
+            return null;
+        });
+    }
+    
+    // Called from the alert scheduler's thread
+    @Override
+    protected List<GroceryItem> getItemsExpiringBetween(long fromDay, long toDay) {
+        return read(() -> super.getItemsExpiringBetween(fromDay, toDay));
+    }
+    
+    @Override
+    public void addExpiryListener(ExpiryAlertScheduler.Listener listener) {
+        write(() -> {
+            if (alerts == null) {
+                alerts = new ExpiryAlertScheduler(getClock(), super.getAlertThresholdDays(), this::getItemsExpiringBetween);
+            }
+            alerts.addListener(listener);
+            return null;
+        });
+    }
+    
+    @Override
+    public void removeExpiryListener(ExpiryAlertScheduler.Listener listener) {
+        write(() -> {
+            if (alerts != null) {
+                alerts.removeListener(listener);
+            }
+            return null;
+        });
+    }
+    
+    @Override
+    public int getAlertThresholdDays() {
+        return read(super::getAlertThresholdDays);
+    }
+    
+    // Write the backup outside the lock from a snapshot (of the whole inventory, once loaded)
+    @Override
+    public BackupStore.Version createBackup() {
+        awaitLoaded();
+        return FileHandler.createBackup(getAllItems(), getDataDir());
+    }
+    
+    // The backup is read outside the lock; only the swap takes the write lock
+    @Override
+    protected void restoreItems(List<GroceryItem> items, long versionId) {
+        mutate(() -> {
+            super.restoreItems(items, versionId);
+            return null;
+        });
+    }
+    
+    // Merge edits other programs make to items.txt as they happen (see ItemsFileWatcher).
+    // Waits for loading to finish; the listener runs on the watcher thread.
+    public void watchItemsFile(ItemsFileWatcher.ConflictPolicy policy, ItemsFileWatcher.Listener listener)
+            throws IOException {
+        awaitLoaded();
+        synchronized (this) {
+            if (watcher != null) {
+                throw new IllegalStateException("Already watching " + getDataDir());
+            }
+            watcher = new ItemsFileWatcher(this, policy, listener);
+        }
+    }
+    
+    @Override
+    public void trackItemsFile(ItemsFileWatcher.ConflictPolicy policy) {
+        mutate(() -> {
+            super.trackItemsFile(policy);
+            return null;
+        });
+    }
+    
+    // The file is read and diffed under the write lock; it only happens when items.txt changed
+    @Override
+    public ItemsFileWatcher.Result syncWithItemsFile() {
+        return mutate(super::syncWithItemsFile);
+    }
+    
+    @Override
+    void startShipping(ReplicationLog log) {
+        mutate(() -> {
+            super.startShipping(log);
+            return null;
+        });
+    }
+    
+    @Override
+    void stopShipping() {
+        write(() -> {
+            super.stopShipping();
+            return null;
+        });
+    }
+    
+    // Under the read lock, so no mutation falls between the items and the position
+    @Override
+    ReplicationLog.Snapshot replicationSnapshot() {
+        return read(super::replicationSnapshot);
+    }
+    
+    // One write-lock hold per shipped batch
+    @Override
+    void applyReplicated(List<String[]> records) {
+        mutate(() -> {
+            super.applyReplicated(records);
+            return null;
+        });
+    }
+    
+    @Override
+    void replaceReplicated(List<GroceryItem> items) {
+        mutate(() -> {
+            super.replaceReplicated(items);
+            return null;
+        });
+    }
+    
+    // Stops a load still in progress and the file watcher first
+    @Override
+    public void close() {
+        closing = true;
+        if (watcher != null) {
+            watcher.close();
+        }
+        if (loader != null) {
+            try {
+                loader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        saver.shutdown();
+        try {
+            saver.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        write(() -> {
+            if (alerts != null) {
+                alerts.close();
+            }
+            super.close();
+            return null;
+        });
+    }
+    
+    // Full rewrites are handed to the saver; journal appends stay inline (they only buffer).
+    // When tracking items.txt, external edits are merged just before the save (an edit
+    // landing between that merge and the rename is still overwritten).
+    @Override
+    protected void persistAll() {
+        if (savePending.compareAndSet(false, true)) {
+            saver.execute(() -> {
+                savePending.set(false);
+                if (isTrackingItemsFile()) {
+                    write(this::mergeItemsFile);
+                }
+                List<GroceryItem> items = getAllItems();
+                FileHandler.saveItems(items, getDataDir());
+                itemsFileSaved(items);
+            });
+        }
+    }
+    
+    private <T> T read(Supplier<T> action) {
+        long start = Metrics.start();
+        lock.readLock().lock();
+        READ_LOCK_WAIT.stop(start);
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // A change to the inventory: waits for loading to finish, then takes the write lock
+    private <T> T mutate(Supplier<T> action) {
+        awaitLoaded();
+        return write(action);
+    }
+    
+    private <T> T write(Supplier<T> action) {
+        long start = Metrics.start();
+        lock.writeLock().lock();
+        WRITE_LOCK_WAIT.stop(start);
+        try {
+            return action.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package service;
+
+import model.GroceryItem;
+import util.DayClock;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Pushes expiry alerts to listeners as items cross the alert-threshold or
+// expiry boundary, instead of rescanning the inventory. Items are looked up by
+// expiry epoch day in the manager's expiry index; at each day rollover only the
+// days that crossed a boundary are read. A threshold change moves the alert
+// boundary, so it reads just the days between the old and new boundary.
+// Lookups (which may take the manager's lock) happen outside the scheduler's
+// lock; callbacks run on a single daemon thread.
+public class ExpiryAlertScheduler {
+    private static final long CHECK_INTERVAL_SECONDS = 60;
+    
+    // Receives alerts; `today` is the epoch day the items crossed the boundary on
+    public interface Listener {
+        // Items that have just come within the alert threshold
+        void itemsExpiringSoon(List<GroceryItem> items, long today);
+        
+        // Items whose expiry date has just passed
+        void itemsExpired(List<GroceryItem> items, long today);
+    }
+    
+    // Items by expiry day, e.g. GroceryManager's expiry index
+    public interface ItemsByExpiry {
+        // Items expiring fromDay..toDay inclusive, earliest first
+        List<GroceryItem> expiringBetween(long fromDay, long toDay);
+    }
+    
+    private final DayClock clock;
+    private final ItemsByExpiry items;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService timer;
+    
+    private long currentDay;
+    private int thresholdDays;
+    
+    public ExpiryAlertScheduler(DayClock clock, int thresholdDays, ItemsByExpiry items) {
+        this.clock = clock;
+        this.items = items;
+        this.currentDay = clock.today();
+        this.thresholdDays = thresholdDays;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "expiry-alerts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Polling is one cached clock read; the index lookups happen once a day
+        timer.scheduleWithFixedDelay(this::checkDay,
+            CHECK_INTERVAL_SECONDS, CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+    
+    // Widening the threshold alerts on the days it newly covers; narrowing is silent
+    public void setThresholdDays(int days) {
+        long today;
+        long fromDay;
+        synchronized (this) {
+            today = currentDay;
+            fromDay = Math.max(currentDay + thresholdDays + 1, currentDay);
+            thresholdDays = days;
+        }
+        dispatch(collect(fromDay, today + days), Collections.emptyList(), today);
+    }
+    
+    // Check for a day rollover now rather than waiting for the next poll
+    public void checkDay() {
+        long today = clock.today();
+        long previous;
+        int threshold;
+        synchronized (this) {
+            if (today <= currentDay) {
+                currentDay = today; // clock moved back: nothing newly crossed
+                return;
+            }
+            previous = currentDay;
+            threshold = thresholdDays;
+            currentDay = today;
+        }
+        // Expiry days in [previous, today) have now passed
+        List<GroceryItem> expired = collect(previous, today - 1);
+        // Days newly inside the alert window (skipping any already passed)
+        List<GroceryItem> expiringSoon = collect(Math.max(previous + threshold + 1, today), today + threshold);
+        dispatch(expiringSoon, expired, today);
+    }
+    
+    public void close() {
+        timer.shutdownNow();
+    }
+    
+    // Items expiring fromDay..toDay inclusive
+    private List<GroceryItem> collect(long fromDay, long toDay) {
+        if (fromDay > toDay || listeners.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return items.expiringBetween(fromDay, toDay);
+    }
+    
+    private void dispatch(List<GroceryItem> expiringSoon, List<GroceryItem> expired, long today) {
+        if ((expiringSoon.isEmpty() && expired.isEmpty()) || listeners.isEmpty() || timer.isShutdown()) {
+            return;
+        }
+        timer.execute(() -> {
+            for (Listener listener : listeners) {
+                if (!expired.isEmpty()) {
+                    listener.itemsExpired(expired, today);
+                }
+                if (!expiringSoon.isEmpty()) {
+                    listener.itemsExpiringSoon(expiringSoon, today);
+                }
+            }
+        });
+    }
+}
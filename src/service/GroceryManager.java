@@ -1,110 +1,645 @@
 package service;
 
 import model.GroceryItem;
+import model.Product;
+import util.BackupStore;
+import util.DayClock;
 import util.FileHandler;
+import util.HistoryStore;
+import util.Journal;
+import util.Metrics;
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class GroceryManager {
-    private List<GroceryItem> groceryItems;
+    // Insertion sequence of every item; GroceryItem uses identity equality, so lookup is O(1).
+    // The sequence breaks ties in the sorted views, keeping equal keys in insertion order.
+    private final Map<GroceryItem, Long> sequence = new HashMap<>();
+    private long nextSequence;
+    
+    // The inventory in insertion order and the three listing orders, as persistent
+    // trees: listings are O(1) snapshots and each change updates them in O(log n)
+    private final SortedItemTree inserted = new SortedItemTree(Comparator.comparingLong(sequence::get));
+    private final SortedItemTree expirySorted = sortedView(ItemQuery.BY_EXPIRY);
+    private final SortedItemTree categorySorted = sortedView(ItemQuery.BY_CATEGORY);
+    private final SortedItemTree nameSorted = sortedView(ItemQuery.BY_NAME);
+    
     private int alertThresholdDays;
     
+    // Source of "today" for every expiry check
+    private final DayClock clock;
+    
+    // Directory holding items.txt / the journal (one per tenant in a TenantRegistry)
+    private final File dataDir;
+    
+    // Write-ahead log in journal mode, null when every change rewrites items.txt
+    private final Journal journal;
+    
+    // Every lot or part of one that leaves the inventory by deleteItem or consume, for waste analytics
+    private final HistoryStore history;
+    
+    // Expiry index: epoch day -> items expiring that day (in insertion order)
+    private final TreeMap<Long, Set<GroceryItem>> expiryIndex = new TreeMap<>();
+    
+    // Case-folded name -> product and its lots; case-folded category -> items (in insertion order)
+    private final Map<String, Product> nameIndex = new HashMap<>();
+    private final Map<String, Set<GroceryItem>> categoryIndex = new HashMap<>();
+    
+    // Substring / prefix search over case-folded item names
+    private final SearchIndex nameSearch = new SearchIndex();
+    
+    // Running counters behind getStatistics
+    private final InventoryStats stats;
+    
+    // Set by trackItemsFile: how conflicting edits are merged, and what items.txt held at the last sync
+    private ItemsFileWatcher.ConflictPolicy filePolicy;
+    private volatile ItemsFileBaseline fileBaseline;
+    
+    // Set by startShipping: every mutation is also handed to this log for standbys (see ReplicationPrimary)
+    private ReplicationLog replicationLog;
+    
     // Common categories for suggestions
     private static final List<String> COMMON_CATEGORIES = Arrays.asList(
         "Dairy", "Fruits", "Vegetables", "Meat & Poultry", "Bakery", 
         "Grains & Pasta", "Beverages", "Snacks", "Frozen Foods", 
         "Condiments & Spices", "Canned Goods", "Other"
     );
+    private static final SearchIndex CATEGORY_SEARCH = new SearchIndex();
+    static {
+        for (String category : COMMON_CATEGORIES) {
+            CATEGORY_SEARCH.add(category.toLowerCase(Locale.ROOT), category);
+        }
+    }
+    
+    // Per-operation latency (see util.Metrics); O(1) accessors are not timed
+    private static final Metrics.Timer LOAD = Metrics.timer("manager.load");
+    private static final Metrics.Timer ADD_ITEM = Metrics.timer("manager.addItem");
+    private static final Metrics.Timer ADD_ITEMS = Metrics.timer("manager.addItems");
+    private static final Metrics.Timer DELETE_ITEM = Metrics.timer("manager.deleteItem");
+    private static final Metrics.Timer UPDATE_QUANTITY = Metrics.timer("manager.updateQuantity");
+    private static final Metrics.Timer CONSUME = Metrics.timer("manager.consume");
+    private static final Metrics.Timer GET_LOTS = Metrics.timer("manager.getLots");
+    private static final Metrics.Timer FIND_BY_NAME = Metrics.timer("manager.findByName");
+    private static final Metrics.Timer SEARCH_BY_NAME = Metrics.timer("manager.searchByName");
+    private static final Metrics.Timer SUGGEST_NAMES = Metrics.timer("manager.suggestNames");
+    private static final Metrics.Timer SEARCH_BY_CATEGORY = Metrics.timer("manager.searchByCategory");
+    private static final Metrics.Timer GET_EXPIRING = Metrics.timer("manager.getItemsExpiringWithin");
+    private static final Metrics.Timer GET_EXPIRED = Metrics.timer("manager.getExpiredItems");
+    private static final Metrics.Timer SORT_BY_EXPIRY = Metrics.timer("manager.sortByExpiryDate");
+    private static final Metrics.Timer SORT_BY_CATEGORY = Metrics.timer("manager.sortByCategory");
+    private static final Metrics.Timer SORT_BY_NAME = Metrics.timer("manager.sortByName");
+    private static final Metrics.Timer GET_ALL = Metrics.timer("manager.getAllItems");
+    private static final Metrics.Timer GET_CATEGORIES = Metrics.timer("manager.getAllCategories");
+    private static final Metrics.Timer GET_STATISTICS = Metrics.timer("manager.getStatistics");
+    private static final Metrics.Timer SET_THRESHOLD = Metrics.timer("manager.setAlertThresholdDays");
+    private static final Metrics.Timer CREATE_BACKUP = Metrics.timer("manager.createBackup");
+    private static final Metrics.Timer RESTORE_BACKUP = Metrics.timer("manager.restoreBackup");
+    private static final Metrics.Timer QUERY = Metrics.timer("manager.query");
+    private static final Metrics.Timer SYNC_FILE = Metrics.timer("manager.syncWithItemsFile");
+    private static final Metrics.Timer WASTE_BY_WEEK = Metrics.timer("manager.getWasteByWeek");
+    private static final Metrics.Timer SHELF_LIFE = Metrics.timer("manager.getShelfLife");
+    private static final Metrics.Timer APPLY_REPLICATED = Metrics.timer("manager.applyReplicated");
+    private static final Metrics.Counter BAD_REPLICATED = Metrics.counter("replication.badRecords");
     
     public GroceryManager() {
-        this.groceryItems = FileHandler.loadItems();
+        this(DayClock.system());
+    }
+    
+    public GroceryManager(DayClock clock) {
+        this(clock, FileHandler.getDataDir());
+    }
+    
+    // Inventory stored in its own data directory (created if missing)
+    public GroceryManager(DayClock clock, File dataDir) {
+        this(clock, dataDir, true);
+    }
+    
+    // With loadNow false the inventory starts empty: a subclass feeds it through
+    // loadBatch and then calls finishLoad (see ConcurrentGroceryManager.openInBackground)
+    protected GroceryManager(DayClock clock, File dataDir, boolean loadNow) {
+        long start = Metrics.start();
+        FileHandler.ensureDirectory(dataDir);
+        this.clock = clock;
+        this.dataDir = dataDir;
         this.alertThresholdDays = 3; // Default: 3 days
+        this.stats = new InventoryStats(clock.today(), alertThresholdDays);
+        this.journal = FileHandler.isJournalMode() ? FileHandler.openJournal(dataDir) : null;
+        this.history = FileHandler.openHistory(dataDir);
+        if (loadNow) {
+            indexAll(FileHandler.loadItems(dataDir));
+            finishLoad();
+            LOAD.stop(start);
+        }
+    }
+    
+    // Index loaded items without persisting them. The running statistics (and so
+    // the expiry alert counts) are updated as each batch arrives.
+    protected void loadBatch(List<GroceryItem> batch) {
+        indexAll(batch);
+    }
+    
+    // Fold a journal left by an earlier journaled run into items.txt
+    protected void finishLoad() {
+        if (!isJournaled() && FileHandler.hasJournal(dataDir)) {
+            FileHandler.saveItems(inserted.snapshot(), dataDir);
+            FileHandler.deleteJournal(dataDir);
+        }
+    }
+    
+    // Whether every stored item has been loaded; queries before then see the items loaded so far
+    public boolean isLoaded() {
+        return true;
     }
     
-    // Add a new grocery item
+    // Share of the stored inventory loaded so far, from 0 to 1
+    public double getLoadProgress() {
+        return 1;
+    }
+    
+    // Block until the inventory is fully loaded
+    public void awaitLoaded() {
+    }
+    
+    // Completes once every stored item is loaded
+    public CompletableFuture<Void> whenLoaded() {
+        return CompletableFuture.completedFuture(null);
+    }
+    
+    // Add a new grocery item; false if it is null or already in the inventory
     public boolean addItem(GroceryItem item) {
-        if (item != null) {
-            groceryItems.add(item);
-            FileHandler.saveItems(groceryItems);
+        long start = Metrics.start();
+        try {
+            if (item == null || !index(item)) {
+                return false;
+            }
+            persist(Journal.ADD, item.toFileString());
             return true;
+        } finally {
+            ADD_ITEM.stop(start);
+        }
+    }
+    
+    // Add many items with a single persist at the end; returns how many were added
+    // (items already in the inventory are skipped and not journaled again)
+    public int addItems(Collection<GroceryItem> items) {
+        long start = Metrics.start();
+        try {
+            List<GroceryItem> added = new ArrayList<>();
+            for (GroceryItem item : items) {
+                if (item != null && index(item)) {
+                    added.add(item);
+                }
+            }
+            if (added.isEmpty()) {
+                return 0;
+            }
+            for (GroceryItem item : added) {
+                ship(Journal.ADD, item.toFileString());
+            }
+            if (isJournaled()) {
+                for (GroceryItem item : added) {
+                    journal.append(Journal.ADD, item.toFileString());
+                }
+                if (FileHandler.needsCompaction(journal, dataDir)) {
+                    FileHandler.compact(journal, inserted.snapshot(), dataDir);
+                }
+            } else {
+                persistAll();
+            }
+            return added.size();
+        } finally {
+            ADD_ITEMS.stop(start);
         }
-        return false;
     }
     
     // Delete item by name
     public boolean deleteItem(String itemName) {
-        boolean removed = groceryItems.removeIf(item -> 
-            item.getName().equalsIgnoreCase(itemName));
-        if (removed) {
-            FileHandler.saveItems(groceryItems);
+        long start = Metrics.start();
+        try {
+            if (!removeProduct(itemName)) {
+                return false;
+            }
+            persist(Journal.DELETE, itemName);
+            return true;
+        } finally {
+            DELETE_ITEM.stop(start);
+        }
+    }
+    
+    // Set the quantity of every item with this name
+    public boolean updateQuantity(String itemName, int quantity) {
+        long start = Metrics.start();
+        try {
+            if (!setQuantity(itemName, quantity)) {
+                return false;
+            }
+            persist(Journal.QUANTITY, quantity + "," + itemName);
+            return true;
+        } finally {
+            UPDATE_QUANTITY.stop(start);
+        }
+    }
+    
+    // Use up to quantity units of a product, earliest-expiring lots first (FEFO).
+    // Lots that run out are removed. Returns the amount actually used.
+    public int consume(String itemName, int quantity) {
+        long start = Metrics.start();
+        try {
+            int[] taken = take(itemName, quantity);
+            if (taken[0] > 0 || taken[1] > 0) {
+                persist(Journal.CONSUME, quantity + "," + itemName);
+            }
+            return taken[0];
+        } finally {
+            CONSUME.stop(start);
+        }
+    }
+    
+    // The changes behind deleteItem, updateQuantity and consume, without persisting
+    // them (also used to apply records shipped from a primary)
+    private boolean removeProduct(String itemName) {
+        Product product = nameIndex.get(fold(itemName));
+        if (product == null) {
+            return false;
+        }
+        int today = (int) clock.today();
+        List<GroceryItem> lots = new ArrayList<>(product.getLots());
+        product.clear(); // unindex then finds each lot already gone
+        for (GroceryItem item : lots) {
+            // Deleting a lot that is past its expiry date means it was thrown out
+            recordRemoval(today, item.isExpired(today) ? HistoryStore.Outcome.EXPIRED : HistoryStore.Outcome.CONSUMED,
+                item, item.getQuantity());
+            unindex(item);
+        }
+        return true;
+    }
+    
+    private boolean setQuantity(String itemName, int quantity) {
+        Product product = nameIndex.get(fold(itemName));
+        if (product == null) {
+            return false;
+        }
+        for (GroceryItem item : product.getLots()) {
+            stats.quantityChanged(item.getQuantity(), quantity);
+            item.setQuantity(quantity);
+        }
+        return true;
+    }
+    
+    // {units taken, lots emptied}
+    private int[] take(String itemName, int quantity) {
+        Product product = nameIndex.get(fold(itemName));
+        if (product == null || quantity <= 0) {
+            return new int[2];
+        }
+        List<GroceryItem> emptied = new ArrayList<>();
+        int taken = product.consume(quantity, emptied);
+        int today = (int) clock.today();
+        long fromEmptied = 0;
+        for (GroceryItem lot : emptied) {
+            fromEmptied += Math.max(lot.getQuantity(), 0);
+            recordRemoval(today, HistoryStore.Outcome.CONSUMED, lot, lot.getQuantity());
+            unindex(lot);
+        }
+        // The rest came out of the one lot that was only partly used, now the next to expire
+        stats.quantityChanged((int) (taken - fromEmptied), 0);
+        if (taken > fromEmptied) {
+            recordRemoval(today, HistoryStore.Outcome.CONSUMED, product.nextToExpire(), (int) (taken - fromEmptied));
+        }
+        return new int[] { taken, emptied.size() };
+    }
+    
+    private void recordRemoval(int today, HistoryStore.Outcome outcome, GroceryItem lot, int quantity) {
+        if (quantity > 0) {
+            history.record(today, outcome, lot.getCategory(), quantity, lot.getPurchaseDay(), lot.getExpiryDay());
+        }
+    }
+    
+    // Lots of a product, earliest expiry first (i.e. the order consume uses them)
+    public List<GroceryItem> getLots(String itemName) {
+        long start = Metrics.start();
+        try {
+            Product product = nameIndex.get(fold(itemName));
+            if (product == null) {
+                return new ArrayList<>();
+            }
+            List<GroceryItem> lots = new ArrayList<>(product.getLots());
+            lots.sort(Comparator.comparingInt(GroceryItem::getExpiryDay));
+            return lots;
+        } finally {
+            GET_LOTS.stop(start);
         }
-        return removed;
     }
     
-    // Search items by name
+    // Total quantity on hand across a product's lots
+    public long getQuantityOnHand(String itemName) {
+        Product product = nameIndex.get(fold(itemName));
+        return product == null ? 0 : product.getTotalQuantity();
+    }
+    
+    // Find items whose name matches exactly (ignoring case)
+    public List<GroceryItem> findByName(String name) {
+        long start = Metrics.start();
+        try {
+            Product product = nameIndex.get(fold(name));
+            return product == null ? new ArrayList<>() : new ArrayList<>(product.getLots());
+        } finally {
+            FIND_BY_NAME.stop(start);
+        }
+    }
+    
+    // Search items by name (substring, ignoring case)
     public List<GroceryItem> searchByName(String name) {
-        return groceryItems.stream()
-            .filter(item -> item.getName().toLowerCase().contains(name.toLowerCase()))
-            .collect(Collectors.toList());
+        long start = Metrics.start();
+        try {
+            List<String> names = nameSearch.findContaining(fold(name));
+            Collections.sort(names);
+            List<GroceryItem> results = new ArrayList<>();
+            for (String key : names) {
+                results.addAll(nameIndex.get(key).getLots());
+            }
+            return results;
+        } finally {
+            SEARCH_BY_NAME.stop(start);
+        }
+    }
+    
+    // Best name matches first (exact, prefix, word start, anywhere), at most limit items
+    public List<GroceryItem> searchByName(String name, int limit) {
+        long start = Metrics.start();
+        try {
+            List<GroceryItem> results = new ArrayList<>();
+            for (String key : nameSearch.search(fold(name), limit)) {
+                for (GroceryItem item : nameIndex.get(key).getLots()) {
+                    if (results.size() == limit) {
+                        return results;
+                    }
+                    results.add(item);
+                }
+            }
+            return results;
+        } finally {
+            SEARCH_BY_NAME.stop(start);
+        }
+    }
+    
+    // Autocomplete item names (case-folded) starting with the prefix
+    public List<String> suggestNames(String prefix, int limit) {
+        long start = Metrics.start();
+        try {
+            return nameSearch.complete(fold(prefix), limit);
+        } finally {
+            SUGGEST_NAMES.stop(start);
+        }
     }
     
     // Search items by category
     public List<GroceryItem> searchByCategory(String category) {
-        return groceryItems.stream()
-            .filter(item -> item.getCategory().equalsIgnoreCase(category))
-            .collect(Collectors.toList());
+        long start = Metrics.start();
+        try {
+            Set<GroceryItem> matches = categoryIndex.get(fold(category));
+            return matches == null ? new ArrayList<>() : new ArrayList<>(matches);
+        } finally {
+            SEARCH_BY_CATEGORY.stop(start);
+        }
     }
     
-    // Get items expiring soon
+    // Get items expiring soon (already ordered by expiry date)
     public List<GroceryItem> getExpiringSoonItems() {
-        return groceryItems.stream()
-            .filter(item -> item.isExpiringSoon(alertThresholdDays))
-            .sorted(Comparator.comparing(GroceryItem::getExpiryDate))
-            .collect(Collectors.toList());
+        return getItemsExpiringWithin(alertThresholdDays);
+    }
+    
+    // Get items expiring between today and today + days (inclusive)
+    public List<GroceryItem> getItemsExpiringWithin(int days) {
+        long start = Metrics.start();
+        try {
+            long today = clock.today();
+            return flatten(expiryIndex.subMap(today, true, today + days, true));
+        } finally {
+            GET_EXPIRING.stop(start);
+        }
+    }
+    
+    // Items expiring fromDay..toDay (inclusive), for the expiry alert scheduler
+    protected List<GroceryItem> getItemsExpiringBetween(long fromDay, long toDay) {
+        return flatten(expiryIndex.subMap(fromDay, true, toDay, true));
     }
     
-    // Get expired items
+    // Source of "today", for subclasses that act on dates
+    protected DayClock getClock() {
+        return clock;
+    }
+    
+    // Get expired items (already ordered by expiry date)
     public List<GroceryItem> getExpiredItems() {
-        return groceryItems.stream()
-            .filter(GroceryItem::isExpired)
-            .sorted(Comparator.comparing(GroceryItem::getExpiryDate))
-            .collect(Collectors.toList());
+        long start = Metrics.start();
+        try {
+            long today = clock.today();
+            return flatten(expiryIndex.headMap(today, false));
+        } finally {
+            GET_EXPIRED.stop(start);
+        }
     }
     
-    // Sort by expiry date
+    // Sort by expiry date (an immutable snapshot, as are the other listings)
     public List<GroceryItem> sortByExpiryDate() {
-        return groceryItems.stream()
-            .sorted(Comparator.comparing(GroceryItem::getExpiryDate))
-            .collect(Collectors.toList());
+        long start = Metrics.start();
+        try {
+            return expirySorted.snapshot();
+        } finally {
+            SORT_BY_EXPIRY.stop(start);
+        }
+    }
+    
+    // Run a composed query (see ItemQuery). Items are produced as the stream is
+    // consumed, so the inventory must not change until it has been.
+    public Stream<GroceryItem> query(ItemQuery query) {
+        long start = Metrics.start();
+        try {
+            return plan(query).stream();
+        } finally {
+            QUERY.stop(start);
+        }
+    }
+    
+    // The plan query() would use, e.g. "category index (1204 candidates) -> top 20 by bounded heap"
+    public String explain(ItemQuery query) {
+        return plan(query).toString();
+    }
+    
+    // Pick the access path with the fewest candidates; every other filter becomes
+    // a predicate. Index sizes are exact and O(1) to read, except the expiry range
+    // (one add per day in the range) and name substrings (an n-gram lookup).
+    private QueryPlan plan(ItemQuery query) {
+        long today = clock.today();
+        List<Predicate<GroceryItem>> filters = new ArrayList<>(query.getPredicates());
+        boolean byExpiry = query.getOrder() == ItemQuery.BY_EXPIRY;
+        
+        String access = byExpiry ? "full scan in expiry order" : "full scan";
+        long estimate = sequence.size();
+        List<GroceryItem> all = byExpiry ? expirySorted.snapshot() : inserted.snapshot();
+        Supplier<Iterator<GroceryItem>> source = all::iterator;
+        boolean inExpiryOrder = byExpiry;
+        Predicate<GroceryItem> chosen = null;
+        
+        if (query.getName() != null) {
+            String key = fold(query.getName());
+            Predicate<GroceryItem> named = item -> fold(item.getName()).equals(key);
+            Product product = nameIndex.get(key);
+            Collection<GroceryItem> lots = product == null ? Collections.emptySet() : product.getLots();
+            filters.add(named);
+            if (lots.size() < estimate) {
+                access = "name index";
+                estimate = lots.size();
+                source = lots::iterator;
+                inExpiryOrder = false;
+                chosen = named;
+            }
+        }
+        if (query.getCategory() != null) {
+            String key = fold(query.getCategory());
+            Predicate<GroceryItem> inCategory = item -> fold(item.getCategory()).equals(key);
+            Set<GroceryItem> bucket = categoryIndex.getOrDefault(key, Collections.emptySet());
+            filters.add(inCategory);
+            if (bucket.size() < estimate) {
+                access = "category index";
+                estimate = bucket.size();
+                source = bucket::iterator;
+                inExpiryOrder = false;
+                chosen = inCategory;
+            }
+        }
+        Long from = query.expiryFrom(today);
+        Long to = query.expiryTo(today);
+        if (from != null || to != null) {
+            long low = from == null ? Long.MIN_VALUE : from;
+            long high = to == null ? Long.MAX_VALUE : to;
+            Predicate<GroceryItem> inRange = item -> item.getExpiryDay() >= low && item.getExpiryDay() <= high;
+            NavigableMap<Long, Set<GroceryItem>> range = low > high ? Collections.emptyNavigableMap()
+                : expiryIndex.subMap(low, true, high, true);
+            int size = count(range);
+            filters.add(inRange);
+            // Ties go to the expiry index when it also provides the order
+            if (size < estimate || (size == estimate && byExpiry)) {
+                access = "expiry index";
+                estimate = size;
+                source = () -> chain(range.values());
+                inExpiryOrder = true;
+                chosen = inRange;
+            }
+        }
+        if (query.getNameContains() != null) {
+            String text = fold(query.getNameContains());
+            Predicate<GroceryItem> contains = item -> fold(item.getName()).contains(text);
+            List<Set<GroceryItem>> lots = new ArrayList<>();
+            long size = 0;
+            for (String key : nameSearch.findContaining(text)) {
+                Set<GroceryItem> productLots = nameIndex.get(key).getLots();
+                lots.add(productLots);
+                size += productLots.size();
+            }
+            filters.add(contains);
+            if (size < estimate) {
+                access = "name search index";
+                estimate = size;
+                source = () -> chain(lots);
+                inExpiryOrder = false;
+                chosen = contains;
+            }
+        }
+        
+        Predicate<GroceryItem> chosenFilter = chosen;
+        filters.removeIf(filter -> filter == chosenFilter);
+        Predicate<GroceryItem> filter = item -> true;
+        for (Predicate<GroceryItem> next : filters) {
+            filter = filter.and(next);
+        }
+        return new QueryPlan(access, estimate, source, inExpiryOrder, filter, query.getOrder(),
+            query.hasLimit() ? query.getLimit() : -1);
+    }
+    
+    // Lazy views for paging: items are produced as the caller advances, without
+    // copying the result. The inventory must not change while iterating.
+    public Iterator<GroceryItem> iterateByExpiryDate() {
+        return chain(expiryIndex.values());
+    }
+    
+    public Iterator<GroceryItem> iterateExpired() {
+        return chain(expiryIndex.headMap(clock.today(), false).values());
+    }
+    
+    public Iterator<GroceryItem> iterateExpiringSoon() {
+        long today = clock.today();
+        return chain(expiryIndex.subMap(today, true, today + alertThresholdDays, true).values());
+    }
+    
+    // Counts matching the views above, from the running statistics
+    public int getItemCount() {
+        return sequence.size();
+    }
+    
+    public long getExpiredCount() {
+        return stats.getExpiredCount(clock.today());
+    }
+    
+    public long getExpiringSoonCount() {
+        return stats.getExpiringSoonCount(clock.today());
     }
     
     // Sort by category
     public List<GroceryItem> sortByCategory() {
-        return groceryItems.stream()
-            .sorted(Comparator.comparing(GroceryItem::getCategory))
-            .collect(Collectors.toList());
+        long start = Metrics.start();
+        try {
+            return categorySorted.snapshot();
+        } finally {
+            SORT_BY_CATEGORY.stop(start);
+        }
     }
     
     // Sort by name
     public List<GroceryItem> sortByName() {
-        return groceryItems.stream()
-            .sorted(Comparator.comparing(GroceryItem::getName))
-            .collect(Collectors.toList());
+        long start = Metrics.start();
+        try {
+            return nameSorted.snapshot();
+        } finally {
+            SORT_BY_NAME.stop(start);
+        }
     }
     
     // Get all items
     public List<GroceryItem> getAllItems() {
-        return new ArrayList<>(groceryItems);
+        long start = Metrics.start();
+        try {
+            return inserted.snapshot();
+        } finally {
+            GET_ALL.stop(start);
+        }
     }
     
     // Get all unique categories from existing items
     public List<String> getAllCategories() {
-        return groceryItems.stream()
-            .map(GroceryItem::getCategory)
-            .distinct()
-            .sorted()
-            .collect(Collectors.toList());
+        long start = Metrics.start();
+        try {
+            return categorySorted.snapshot().stream()
+                .map(GroceryItem::getCategory)
+                .distinct()
+                .collect(Collectors.toList());
+        } finally {
+            GET_CATEGORIES.stop(start);
+        }
+    }
+    
+    // Built-in category list
+    public static List<String> getCommonCategories() {
+        return Collections.unmodifiableList(COMMON_CATEGORIES);
     }
     
     // Get available categories (both common and existing)
@@ -116,37 +651,493 @@ public class GroceryManager {
     
     // Category suggestions
     public List<String> getCategorySuggestions(String input) {
-        return COMMON_CATEGORIES.stream()
-            .filter(category -> category.toLowerCase().startsWith(input.toLowerCase()))
-            .collect(Collectors.toList());
+        return CATEGORY_SEARCH.complete(fold(input), COMMON_CATEGORIES.size());
     }
     
     // Statistics
     public Map<String, Object> getStatistics() {
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("totalItems", groceryItems.size());
-        stats.put("expiredItems", getExpiredItems().size());
-        stats.put("expiringSoon", getExpiringSoonItems().size());
-        
-        // Category distribution
-        Map<String, Long> categoryCount = groceryItems.stream()
-            .collect(Collectors.groupingBy(GroceryItem::getCategory, Collectors.counting()));
-        stats.put("categoryDistribution", categoryCount);
-        
-        return stats;
+        long start = Metrics.start();
+        try {
+            Map<String, Object> result = new HashMap<>();
+            long today = clock.today();
+            result.put("totalItems", sequence.size());
+            result.put("totalQuantity", stats.getTotalQuantity());
+            result.put("expiredItems", stats.getExpiredCount(today));
+            result.put("expiringSoon", stats.getExpiringSoonCount(today));
+            
+            // Category distribution
+            result.put("categoryDistribution", stats.getCategoryCounts());
+            
+            return result;
+        } finally {
+            GET_STATISTICS.stop(start);
+        }
     }
     
     // Set alert threshold
     public void setAlertThresholdDays(int days) {
-        this.alertThresholdDays = days;
+        long start = Metrics.start();
+        try {
+            this.alertThresholdDays = days;
+            stats.setThresholdDays(clock.today(), days);
+        } finally {
+            SET_THRESHOLD.stop(start);
+        }
+    }
+    
+    // Receive alerts as items cross the threshold or expiry boundary. The alerts
+    // read the inventory from their own thread, so only ConcurrentGroceryManager
+    // supports them.
+    public void addExpiryListener(ExpiryAlertScheduler.Listener listener) {
+        throw new UnsupportedOperationException("Expiry alerts need a ConcurrentGroceryManager");
+    }
+    
+    // Nothing can be registered on this class (see addExpiryListener)
+    public void removeExpiryListener(ExpiryAlertScheduler.Listener listener) {
     }
     
     public int getAlertThresholdDays() {
         return alertThresholdDays;
     }
     
-    // Create backup
-    public void createBackup() {
-        FileHandler.createBackup(groceryItems);
+    // Today's date as an epoch day, from the manager's clock
+    public long getToday() {
+        return clock.today();
+    }
+    
+    // Directory this inventory is stored in
+    public File getDataDir() {
+        return dataDir;
+    }
+    
+    // Create an incremental backup version; null if it failed
+    public BackupStore.Version createBackup() {
+        long start = Metrics.start();
+        try {
+            return FileHandler.createBackup(inserted.snapshot(), dataDir);
+        } finally {
+            CREATE_BACKUP.stop(start);
+        }
+    }
+    
+    // Backup versions, oldest first
+    public List<BackupStore.Version> getBackups() throws IOException {
+        return FileHandler.backupStore(dataDir).listVersions();
+    }
+    
+    // Units consumed and thrown out expired per week (Monday start) and category,
+    // for removals between from and to inclusive (see WasteReport)
+    public List<WasteReport.WeeklyWaste> getWasteByWeek(LocalDate from, LocalDate to) throws IOException {
+        long start = Metrics.start();
+        try {
+            return WasteReport.weekly(history, from, to);
+        } finally {
+            WASTE_BY_WEEK.stop(start);
+        }
+    }
+    
+    // Average days each category was kept versus its planned shelf life, for removals between from and to
+    public List<WasteReport.ShelfLife> getShelfLife(LocalDate from, LocalDate to) throws IOException {
+        long start = Metrics.start();
+        try {
+            return WasteReport.shelfLife(history, from, to);
+        } finally {
+            SHELF_LIFE.stop(start);
+        }
+    }
+    
+    // Replace the inventory with the latest backup taken at or before the given time;
+    // returns the version restored, or null if there is no such backup
+    public BackupStore.Version restoreBackup(Instant pointInTime) throws IOException {
+        long start = Metrics.start();
+        try {
+            BackupStore store = FileHandler.backupStore(dataDir);
+            BackupStore.Version version = store.findVersion(pointInTime);
+            if (version == null) {
+                return null;
+            }
+            restoreItems(store.restore(version.getId()), version.getId());
+            return version;
+        } finally {
+            RESTORE_BACKUP.stop(start);
+        }
+    }
+    
+    // Swap in restored items. In journal mode this is a single record naming the
+    // version, folded into the snapshot by an immediate compaction.
+    protected void restoreItems(List<GroceryItem> items, long versionId) {
+        for (GroceryItem item : inserted.snapshot()) {
+            unindex(item);
+        }
+        indexAll(items);
+        persist(Journal.RESTORE, String.valueOf(versionId));
+        if (isJournaled()) {
+            FileHandler.compact(journal, inserted.snapshot(), dataDir);
+        }
+    }
+    
+    // Track edits other programs make to items.txt: from now on syncWithItemsFile
+    // merges them in, and a save merges them first instead of overwriting them
+    public void trackItemsFile(ItemsFileWatcher.ConflictPolicy policy) {
+        File file = FileHandler.getTextSnapshot(dataDir);
+        if (file == null) {
+            throw new IllegalStateException("Only the text snapshot (items.txt) can be tracked");
+        }
+        Object stamp = ItemsFileBaseline.stamp(file);
+        List<GroceryItem> items = stamp == null ? Collections.emptyList() : FileHandler.readTextFile(file);
+        filePolicy = policy;
+        fileBaseline = ItemsFileBaseline.of(ItemsFileBaseline.group(items), stamp);
+    }
+    
+    // Merge edits made to items.txt since the last sync, lot by lot: a lot changed
+    // only in the file takes the file's version, one changed only here is kept, and
+    // one changed in both follows the conflict policy. Only differing lots are
+    // removed and re-added. Does nothing unless tracking, or if the file is unchanged
+    // or missing (a deleted file is rewritten by the next save, not taken as "no items").
+    public ItemsFileWatcher.Result syncWithItemsFile() {
+        ItemsFileWatcher.Result result = mergeItemsFile();
+        if (result.isFileBehind() && !isJournaled()) {
+            persistAll();
+        }
+        return result;
+    }
+    
+    protected ItemsFileWatcher.Result mergeItemsFile() {
+        ItemsFileBaseline baseline = fileBaseline;
+        File file = FileHandler.getTextSnapshot(dataDir);
+        Object stamp = ItemsFileBaseline.stamp(file);
+        if (baseline == null || stamp == null || baseline.matches(file)) {
+            return ItemsFileWatcher.Result.NONE;
+        }
+        long start = Metrics.start();
+        try {
+            Map<Long, List<GroceryItem>> theirs = ItemsFileBaseline.group(FileHandler.readTextFile(file));
+            Map<Long, List<GroceryItem>> ours = ItemsFileBaseline.group(inserted.snapshot());
+            Set<Long> lots = new HashSet<>(theirs.keySet());
+            lots.addAll(ours.keySet());
+            int added = 0;
+            int removed = 0;
+            int conflicts = 0;
+            boolean fileChanged = false;
+            boolean fileBehind = false;
+            for (Long lot : lots) {
+                List<GroceryItem> fileLot = theirs.get(lot);
+                List<GroceryItem> ourLot = ours.get(lot);
+                long inFile = ItemsFileBaseline.quantityHash(fileLot);
+                long here = ItemsFileBaseline.quantityHash(ourLot);
+                long before = baseline.quantityHash(lot);
+                fileChanged |= inFile != before;
+                if (inFile == here) {
+                    continue;
+                }
+                if (inFile == before) {
+                    fileBehind = true; // changed only here
+                    continue;
+                }
+                if (here != before) {
+                    conflicts++;
+                    if (filePolicy == ItemsFileWatcher.ConflictPolicy.INVENTORY_WINS) {
+                        fileBehind = true;
+                        continue;
+                    }
+                }
+                for (GroceryItem item : ourLot == null ? Collections.<GroceryItem>emptyList() : ourLot) {
+                    unindex(item);
+                    removed++;
+                }
+                for (GroceryItem item : fileLot == null ? Collections.<GroceryItem>emptyList() : fileLot) {
+                    index(item);
+                    added++;
+                }
+            }
+            fileBaseline = ItemsFileBaseline.of(theirs, stamp);
+            if (added + removed > 0 && replicationLog != null) {
+                replicationLog.reset();
+            }
+            // Journal records since the last compaction must not be replayed over the new file.
+            // compact() skips while one is running, and that one would then rename its
+            // stale snapshot over the edited file, so wait for it first.
+            if (isJournaled() && fileChanged) {
+                FileHandler.awaitCompaction(dataDir);
+                FileHandler.compact(journal, inserted.snapshot(), dataDir);
+            }
+            return new ItemsFileWatcher.Result(added, removed, conflicts, fileBehind);
+        } finally {
+            SYNC_FILE.stop(start);
+        }
+    }
+    
+    // Whether trackItemsFile has been called
+    protected boolean isTrackingItemsFile() {
+        return fileBaseline != null;
+    }
+    
+    // A save of these items finished: they are now the baseline for the next merge
+    protected void itemsFileSaved(List<GroceryItem> items) {
+        if (fileBaseline != null) {
+            File file = FileHandler.getTextSnapshot(dataDir);
+            fileBaseline = ItemsFileBaseline.of(ItemsFileBaseline.group(items), ItemsFileBaseline.stamp(file));
+        }
+    }
+    
+    // Hand every later mutation to a log that ReplicationPrimary ships to standbys
+    void startShipping(ReplicationLog log) {
+        replicationLog = log;
+    }
+    
+    void stopShipping() {
+        replicationLog = null;
+    }
+    
+    // The whole inventory as CSV text, with the log position it reflects. Written
+    // out here rather than later, since quantities change in place.
+    ReplicationLog.Snapshot replicationSnapshot() {
+        List<GroceryItem> items = inserted.snapshot();
+        StringBuilder text = new StringBuilder(items.size() * 48);
+        for (GroceryItem item : items) {
+            text.append(item.toFileString()).append('\n');
+        }
+        return new ReplicationLog.Snapshot(replicationLog.getLast(), items.size(), text.toString());
+    }
+    
+    // Apply records shipped from a primary, in order, as the primary applied them;
+    // they are persisted like local changes, but with one rewrite per batch
+    void applyReplicated(List<String[]> records) {
+        long start = Metrics.start();
+        for (String[] record : records) {
+            try {
+                switch (record[0]) {
+                    case Journal.ADD -> index(GroceryItem.fromFileString(record[1]));
+                    case Journal.DELETE -> removeProduct(record[1]);
+                    case Journal.QUANTITY -> {
+                        int comma = record[1].indexOf(',');
+                        setQuantity(record[1].substring(comma + 1), Integer.parseInt(record[1].substring(0, comma)));
+                    }
+                    case Journal.CONSUME -> {
+                        int comma = record[1].indexOf(',');
+                        take(record[1].substring(comma + 1), Integer.parseInt(record[1].substring(0, comma)));
+                    }
+                    default -> throw new IllegalArgumentException("unknown record type " + record[0]);
+                }
+                ship(record[0], record[1]);
+            } catch (RuntimeException e) {
+                BAD_REPLICATED.increment();
+                System.err.println("Error applying replicated record " + record[0] + "," + record[1] + ": " + e.getMessage());
+            }
+        }
+        if (isJournaled()) {
+            for (String[] record : records) {
+                journal.append(record[0], record[1]);
+            }
+            if (FileHandler.needsCompaction(journal, dataDir)) {
+                FileHandler.compact(journal, inserted.snapshot(), dataDir);
+            }
+        } else {
+            persistAll();
+        }
+        APPLY_REPLICATED.stop(start);
+    }
+    
+    // Replace the inventory with a primary's snapshot. In journal mode the journal
+    // is folded in at once (after any compaction already running), since no record
+    // describes the swap.
+    void replaceReplicated(List<GroceryItem> items) {
+        for (GroceryItem item : inserted.snapshot()) {
+            unindex(item);
+        }
+        indexAll(items);
+        if (replicationLog != null) {
+            replicationLog.reset();
+        }
+        if (isJournaled()) {
+            FileHandler.awaitCompaction(dataDir);
+            FileHandler.compact(journal, inserted.snapshot(), dataDir);
+        } else {
+            persistAll();
+        }
+    }
+    
+    // Flush pending journal and history writes before exit
+    public void close() {
+        history.close();
+        if (journal != null) {
+            FileHandler.awaitCompaction(dataDir);
+            journal.close();
+        }
+    }
+    
+    private boolean isJournaled() {
+        return journal != null;
+    }
+    
+    // Rewrite the whole snapshot, first merging any external edits when tracking items.txt
+    protected void persistAll() {
+        if (isTrackingItemsFile()) {
+            mergeItemsFile();
+        }
+        List<GroceryItem> items = inserted.snapshot();
+        FileHandler.saveItems(items, dataDir);
+        itemsFileSaved(items);
+    }
+    
+    // Record a mutation: append to the journal, or rewrite items.txt
+    private void persist(String recordType, String payload) {
+        ship(recordType, payload);
+        if (!isJournaled()) {
+            persistAll();
+            return;
+        }
+        journal.append(recordType, payload);
+        if (FileHandler.needsCompaction(journal, dataDir)) {
+            FileHandler.compact(journal, inserted.snapshot(), dataDir);
+        }
+    }
+    
+    // Hand a mutation to the replication log, if shipping. A restore has no record a
+    // standby can apply (the backup is local), so standbys resync from a snapshot.
+    private void ship(String recordType, String payload) {
+        if (replicationLog == null) {
+            return;
+        }
+        if (recordType.equals(Journal.RESTORE)) {
+            replicationLog.reset();
+        } else {
+            replicationLog.append(recordType, payload);
+        }
+    }
+    
+    // Keep the indexes in step with the item set; adding an item already present is
+    // a no-op and returns false
+    private boolean index(GroceryItem item) {
+        if (!assignSequence(item)) {
+            return false;
+        }
+        inserted.add(item);
+        expirySorted.add(item);
+        categorySorted.add(item);
+        nameSorted.add(item);
+        indexFields(item);
+        return true;
+    }
+    
+    // Index a batch of new items. Each listing tree is rebuilt in one pass from a
+    // stable sort of the batch merged into its current contents: the batch's
+    // sequences are all higher, so it goes after equal keys already listed.
+    private void indexAll(List<GroceryItem> items) {
+        List<GroceryItem> added = new ArrayList<>(items.size());
+        for (GroceryItem item : items) {
+            if (item != null && assignSequence(item)) {
+                added.add(item);
+                indexFields(item);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        inserted.merge(added, (a, b) -> 0);
+        mergeSorted(expirySorted, added, ItemQuery.BY_EXPIRY);
+        mergeSorted(categorySorted, added, ItemQuery.BY_CATEGORY);
+        mergeSorted(nameSorted, added, ItemQuery.BY_NAME);
+    }
+    
+    private static void mergeSorted(SortedItemTree tree, List<GroceryItem> inInsertionOrder, Comparator<GroceryItem> order) {
+        List<GroceryItem> sorted = new ArrayList<>(inInsertionOrder);
+        sorted.sort(order);
+        tree.merge(sorted, order);
+    }
+    
+    private boolean assignSequence(GroceryItem item) {
+        if (sequence.putIfAbsent(item, nextSequence) != null) {
+            return false;
+        }
+        nextSequence++;
+        return true;
+    }
+    
+    // Lookup indexes and running statistics
+    private void indexFields(GroceryItem item) {
+        expiryIndex.computeIfAbsent((long) item.getExpiryDay(), day -> new LinkedHashSet<>()).add(item);
+        nameIndex.computeIfAbsent(fold(item.getName()), key -> new Product(item.getName())).addLot(item);
+        nameSearch.add(fold(item.getName()));
+        stats.itemAdded(item.getCategory(), item.getExpiryDay(), item.getQuantity());
+        categoryIndex.computeIfAbsent(fold(item.getCategory()), key -> new LinkedHashSet<>()).add(item);
+    }
+    
+    private void unindex(GroceryItem item) {
+        if (!sequence.containsKey(item)) {
+            return;
+        }
+        inserted.remove(item);
+        expirySorted.remove(item);
+        categorySorted.remove(item);
+        nameSorted.remove(item);
+        sequence.remove(item);
+        removeFromBucket(expiryIndex, (long) item.getExpiryDay(), item);
+        String nameKey = fold(item.getName());
+        Product product = nameIndex.get(nameKey);
+        if (product != null) {
+            product.removeLot(item); // no-op for a lot consume already took out
+            if (product.isEmpty()) {
+                nameIndex.remove(nameKey);
+            }
+        }
+        nameSearch.remove(fold(item.getName()));
+        stats.itemRemoved(item.getCategory(), item.getExpiryDay(), item.getQuantity());
+        removeFromBucket(categoryIndex, fold(item.getCategory()), item);
+    }
+    
+    private static <K> void removeFromBucket(Map<K, Set<GroceryItem>> index, K key, GroceryItem item) {
+        Set<GroceryItem> bucket = index.get(key);
+        if (bucket != null && bucket.remove(item) && bucket.isEmpty()) {
+            index.remove(key);
+        }
+    }
+    
+    // A listing order made total by the insertion sequence
+    private SortedItemTree sortedView(Comparator<GroceryItem> order) {
+        return new SortedItemTree(order.thenComparingLong(sequence::get));
+    }
+    
+    private static String fold(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+    
+    private static Iterator<GroceryItem> chain(Collection<Set<GroceryItem>> buckets) {
+        Iterator<Set<GroceryItem>> outer = buckets.iterator();
+        return new Iterator<>() {
+            private Iterator<GroceryItem> inner = Collections.emptyIterator();
+            
+            @Override
+            public boolean hasNext() {
+                while (!inner.hasNext() && outer.hasNext()) {
+                    inner = outer.next().iterator();
+                }
+                return inner.hasNext();
+            }
+            
+            @Override
+            public GroceryItem next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return inner.next();
+            }
+        };
+    }
+    
+    private static List<GroceryItem> flatten(Map<Long, Set<GroceryItem>> buckets) {
+        List<GroceryItem> result = new ArrayList<>(count(buckets));
+        for (Set<GroceryItem> bucket : buckets.values()) {
+            result.addAll(bucket);
+        }
+        return result;
+    }
+    
+    private static int count(Map<Long, Set<GroceryItem>> buckets) {
+        int total = 0;
+        for (Set<GroceryItem> bucket : buckets.values()) {
+            total += bucket.size();
+        }
+        return total;
     }
 }
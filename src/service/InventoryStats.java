@@ -0,0 +1,131 @@
+package service;
+
+import java.util.*;
+
+// Running inventory counters, updated in O(1) per change. Expired and
+// expiring-soon counts are kept for one reference day and rolled forward
+// lazily from the per-day expiry counts when the date moves on.
+// Methods are synchronized because reads may roll the counters forward.
+public class InventoryStats {
+    // Jumps longer than this are recomputed from the day buckets instead of rolled
+    private static final long MAX_ROLL_DAYS = 366;
+    
+    private long totalItems;
+    private long totalQuantity;
+    private final Map<String, Long> categoryCounts = new HashMap<>();
+    private final Map<Long, Long> expiryDayCounts = new HashMap<>();
+    
+    private long referenceDay;
+    private int thresholdDays;
+    private long expiredCount;
+    private long expiringSoonCount;
+    
+    public InventoryStats(long today, int thresholdDays) {
+        this.referenceDay = today;
+        this.thresholdDays = thresholdDays;
+    }
+    
+    public synchronized void itemAdded(String category, long expiryDay, int quantity) {
+        totalItems++;
+        totalQuantity += quantity;
+        categoryCounts.merge(category, 1L, Long::sum);
+        expiryDayCounts.merge(expiryDay, 1L, Long::sum);
+        adjustWindowCounts(expiryDay, 1);
+    }
+    
+    public synchronized void itemRemoved(String category, long expiryDay, int quantity) {
+        totalItems--;
+        totalQuantity -= quantity;
+        decrement(categoryCounts, category);
+        decrement(expiryDayCounts, expiryDay);
+        adjustWindowCounts(expiryDay, -1);
+    }
+    
+    public synchronized void quantityChanged(int oldQuantity, int newQuantity) {
+        totalQuantity += newQuantity - oldQuantity;
+    }
+    
+    public synchronized void setThresholdDays(long today, int thresholdDays) {
+        roll(today);
+        this.thresholdDays = thresholdDays;
+        expiringSoonCount = sumDays(referenceDay, referenceDay + thresholdDays);
+    }
+    
+    public synchronized long getTotalItems() {
+        return totalItems;
+    }
+    
+    public synchronized long getTotalQuantity() {
+        return totalQuantity;
+    }
+    
+    // Copy of category -> item count
+    public synchronized Map<String, Long> getCategoryCounts() {
+        return new HashMap<>(categoryCounts);
+    }
+    
+    public synchronized long getExpiredCount(long today) {
+        roll(today);
+        return expiredCount;
+    }
+    
+    public synchronized long getExpiringSoonCount(long today) {
+        roll(today);
+        return expiringSoonCount;
+    }
+    
+    // Move the reference day forward, touching only the days that changed state
+    private void roll(long today) {
+        if (today == referenceDay) {
+            return;
+        }
+        if (today < referenceDay || today - referenceDay > MAX_ROLL_DAYS) {
+            recompute(today);
+            return;
+        }
+        long oldStart = referenceDay;
+        long oldEnd = referenceDay + thresholdDays;
+        long newEnd = today + thresholdDays;
+        
+        // Days before today are now expired; they leave the old window
+        expiredCount += sumDays(oldStart, today - 1);
+        expiringSoonCount -= sumDays(oldStart, Math.min(today - 1, oldEnd));
+        // Days newly inside the window
+        expiringSoonCount += sumDays(Math.max(oldEnd + 1, today), newEnd);
+        referenceDay = today;
+    }
+    
+    private void recompute(long today) {
+        referenceDay = today;
+        expiredCount = 0;
+        expiringSoonCount = 0;
+        for (Map.Entry<Long, Long> entry : expiryDayCounts.entrySet()) {
+            long day = entry.getKey();
+            if (day < today) {
+                expiredCount += entry.getValue();
+            } else if (day <= today + thresholdDays) {
+                expiringSoonCount += entry.getValue();
+            }
+        }
+    }
+    
+    private void adjustWindowCounts(long expiryDay, int delta) {
+        if (expiryDay < referenceDay) {
+            expiredCount += delta;
+        } else if (expiryDay <= referenceDay + thresholdDays) {
+            expiringSoonCount += delta;
+        }
+    }
+    
+    private long sumDays(long fromDay, long toDay) {
+        long sum = 0;
+        for (long day = fromDay; day <= toDay; day++) {
+            sum += expiryDayCounts.getOrDefault(day, 0L);
+        }
+        return sum;
+    }
+    
+    private static <K> void decrement(Map<K, Long> counts, K key) {
+        counts.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+    }
+}
@@ -0,0 +1,134 @@
+package service;
+
+import model.GroceryItem;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Predicate;
+
+// A composable inventory query: filters, an optional order and an optional
+// limit, run with GroceryManager.query(). The manager's planner starts from the
+// most selective index among the filters (exact name, name substring, category
+// or expiry range) and applies the rest as predicates; a limit with an order the
+// index does not already provide keeps only the best `limit` items in a bounded
+// heap instead of sorting every match.
+//
+//   manager.query(ItemQuery.create()
+//       .inCategory("Dairy").expiringWithin(5)
+//       .orderBy(ItemQuery.BY_QUANTITY_DESC).limit(20))
+public class ItemQuery {
+    public static final Comparator<GroceryItem> BY_EXPIRY = Comparator.comparingInt(GroceryItem::getExpiryDay);
+    public static final Comparator<GroceryItem> BY_NAME = Comparator.comparing(GroceryItem::getName);
+    public static final Comparator<GroceryItem> BY_CATEGORY = Comparator.comparing(GroceryItem::getCategory);
+    public static final Comparator<GroceryItem> BY_QUANTITY_DESC =
+        Comparator.comparingInt(GroceryItem::getQuantity).reversed();
+    
+    // Expiry bound relative to "today" when the query runs
+    private enum Relative { NONE, WITHIN_DAYS, EXPIRED }
+    
+    private String name;
+    private String nameContains;
+    private String category;
+    private Long fromDay;
+    private Long toDay;
+    private Relative relative = Relative.NONE;
+    private int withinDays;
+    private final List<Predicate<GroceryItem>> predicates = new ArrayList<>();
+    private Comparator<GroceryItem> order;
+    private int limit = -1;
+    
+    public static ItemQuery create() {
+        return new ItemQuery();
+    }
+    
+    // Exact name, ignoring case
+    public ItemQuery named(String name) {
+        this.name = name;
+        return this;
+    }
+    
+    // Name contains the text, ignoring case
+    public ItemQuery nameContains(String text) {
+        this.nameContains = text;
+        return this;
+    }
+    
+    // Category, ignoring case
+    public ItemQuery inCategory(String category) {
+        this.category = category;
+        return this;
+    }
+    
+    // Expiry date in [from, to] (either may be null for an open end)
+    public ItemQuery expiringBetween(LocalDate from, LocalDate to) {
+        if (from != null) {
+            fromDay = fromDay == null ? from.toEpochDay() : Math.max(fromDay, from.toEpochDay());
+        }
+        if (to != null) {
+            toDay = toDay == null ? to.toEpochDay() : Math.min(toDay, to.toEpochDay());
+        }
+        return this;
+    }
+    
+    // Expiring between today and today + days, as of when the query runs
+    public ItemQuery expiringWithin(int days) {
+        this.relative = Relative.WITHIN_DAYS;
+        this.withinDays = days;
+        return this;
+    }
+    
+    // Already expired, as of when the query runs
+    public ItemQuery expired() {
+        this.relative = Relative.EXPIRED;
+        return this;
+    }
+    
+    public ItemQuery minQuantity(int quantity) {
+        return where(item -> item.getQuantity() >= quantity);
+    }
+    
+    // Any other condition; never used to choose an index
+    public ItemQuery where(Predicate<GroceryItem> predicate) {
+        predicates.add(predicate);
+        return this;
+    }
+    
+    public ItemQuery orderBy(Comparator<GroceryItem> order) {
+        this.order = order;
+        return this;
+    }
+    
+    public ItemQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+    
+    String getName() { return name; }
+    String getNameContains() { return nameContains; }
+    String getCategory() { return category; }
+    List<Predicate<GroceryItem>> getPredicates() { return predicates; }
+    Comparator<GroceryItem> getOrder() { return order; }
+    boolean hasLimit() { return limit >= 0; }
+    int getLimit() { return limit; }
+    
+    // Expiry range as [from, to] epoch days for the given today; null ends are open
+    Long expiryFrom(long today) {
+        Long from = fromDay;
+        if (relative == Relative.WITHIN_DAYS) {
+            from = from == null ? today : Math.max(from, today);
+        }
+        return from;
+    }
+    
+    Long expiryTo(long today) {
+        Long to = toDay;
+        if (relative == Relative.WITHIN_DAYS) {
+            to = to == null ? today + withinDays : Math.min(to, today + withinDays);
+        } else if (relative == Relative.EXPIRED) {
+            to = to == null ? today - 1 : Math.min(to, today - 1);
+        }
+        return to;
+    }
+}
@@ -0,0 +1,98 @@
+package service;
+
+import model.GroceryItem;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+// What items.txt held when the manager last read or wrote it, for three-way
+// merges with external edits. Items are grouped into lots by a hash of name,
+// category, purchase and expiry day; each lot keeps a hash of its quantities.
+// Stored as sorted arrays (16 bytes per lot) plus the file's size, modification
+// time and file key, so an unchanged file is recognised without reading it.
+class ItemsFileBaseline {
+    private final long[] lots;
+    private final long[] quantities;
+    private final Object stamp;
+    
+    private ItemsFileBaseline(long[] lots, long[] quantities, Object stamp) {
+        this.lots = lots;
+        this.quantities = quantities;
+        this.stamp = stamp;
+    }
+    
+    // Baseline for items the file holds, given the stamp taken before it was read or after it was written
+    static ItemsFileBaseline of(Map<Long, List<GroceryItem>> byLot, Object stamp) {
+        long[] lots = new long[byLot.size()];
+        int count = 0;
+        for (Long lot : byLot.keySet()) {
+            lots[count++] = lot;
+        }
+        Arrays.sort(lots);
+        long[] quantities = new long[lots.length];
+        for (int i = 0; i < lots.length; i++) {
+            quantities[i] = quantityHash(byLot.get(lots[i]));
+        }
+        return new ItemsFileBaseline(lots, quantities, stamp);
+    }
+    
+    // Quantity hash the lot had, or 0 if the file had no such lot
+    long quantityHash(long lot) {
+        int index = Arrays.binarySearch(lots, lot);
+        return index < 0 ? 0 : quantities[index];
+    }
+    
+    // Whether the file still looks the way it did for this baseline
+    boolean matches(File file) {
+        return Objects.equals(stamp, stamp(file));
+    }
+    
+    // Size, modification time and file key (an atomic rename gives a new key); null if missing
+    static Object stamp(File file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return Arrays.asList(attributes.size(), attributes.lastModifiedTime(), attributes.fileKey());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    // Items by lot hash, in the order given
+    static Map<Long, List<GroceryItem>> group(Collection<GroceryItem> items) {
+        Map<Long, List<GroceryItem>> byLot = new HashMap<>(items.size() * 4 / 3 + 1);
+        for (GroceryItem item : items) {
+            byLot.computeIfAbsent(lotHash(item), lot -> new ArrayList<>(1)).add(item);
+        }
+        return byLot;
+    }
+    
+    // Colliding lots are simply merged and replaced together, so a collision costs precision, not correctness
+    static long lotHash(GroceryItem item) {
+        long hash = item.getName().hashCode();
+        hash = hash * 0x9E3779B97F4A7C15L + item.getCategory().hashCode();
+        hash = hash * 0x9E3779B97F4A7C15L + item.getPurchaseDay();
+        hash = hash * 0x9E3779B97F4A7C15L + item.getExpiryDay();
+        return mix(hash);
+    }
+    
+    // Order-independent hash of a lot's quantities; never 0 for a lot that exists
+    static long quantityHash(List<GroceryItem> lot) {
+        if (lot == null) {
+            return 0;
+        }
+        long hash = lot.size();
+        for (GroceryItem item : lot) {
+            hash += mix(item.getQuantity() + 0x632BE59BD9B4E019L);
+        }
+        return hash == 0 ? 1 : hash;
+    }
+    
+    // SplitMix64 finalizer
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
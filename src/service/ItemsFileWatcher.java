@@ -0,0 +1,151 @@
+package service;
+
+import util.FileHandler;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+// Watches a manager's items.txt for edits made by other programs (e.g. an ERP
+// export dropping a new file) and merges them in with syncWithItemsFile: only
+// the lots that differ are removed and re-added, instead of reloading the whole
+// inventory. Events are debounced so a file written in several steps is merged
+// once. The manager's own saves also raise events; they merge to nothing.
+//
+// Conflict policy, for a lot (name, category, purchase and expiry date) changed
+// both in the file and in the inventory since the last sync: FILE_WINS takes the
+// file's version of the lot, INVENTORY_WINS keeps ours and writes it back.
+// Changes made on only one side are always kept.
+public class ItemsFileWatcher implements Closeable {
+    // Quiet period after the last event before the file is read
+    private static final long SETTLE_MILLIS = 200;
+    
+    public enum ConflictPolicy {
+        FILE_WINS, INVENTORY_WINS;
+        
+        // -Dset.watch=file-wins or inventory-wins; null when not set (no watching)
+        public static ConflictPolicy configured() {
+            String value = System.getProperty("set.watch");
+            if (value == null || value.equalsIgnoreCase("off")) {
+                return null;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase().replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("set.watch must be off, file-wins or inventory-wins: " + value);
+            }
+        }
+    }
+    
+    // What one sync changed
+    public static class Result {
+        static final Result NONE = new Result(0, 0, 0, false);
+        
+        private final int added;
+        private final int removed;
+        private final int conflicts;
+        private final boolean fileBehind; // the inventory kept changes the file does not have
+        
+        Result(int added, int removed, int conflicts, boolean fileBehind) {
+            this.added = added;
+            this.removed = removed;
+            this.conflicts = conflicts;
+            this.fileBehind = fileBehind;
+        }
+        
+        public int getAdded() { return added; }
+        public int getRemoved() { return removed; }
+        public int getConflicts() { return conflicts; }
+        boolean isFileBehind() { return fileBehind; }
+        
+        public boolean isEmpty() {
+            return added == 0 && removed == 0 && conflicts == 0;
+        }
+        
+        @Override
+        public String toString() {
+            return "+" + added + " / -" + removed + " item(s), " + conflicts + " conflict(s)";
+        }
+    }
+    
+    // Called on the watcher thread after a sync that changed something
+    public interface Listener {
+        void itemsFileMerged(Result result);
+    }
+    
+    private final GroceryManager manager;
+    private final String fileName;
+    private final WatchService watchService;
+    private final Listener listener;
+    private final Thread thread;
+    
+    // Start watching; the manager must be safe to call from another thread (ConcurrentGroceryManager)
+    public ItemsFileWatcher(GroceryManager manager, ConflictPolicy policy, Listener listener) throws IOException {
+        File file = FileHandler.getTextSnapshot(manager.getDataDir());
+        if (file == null) {
+            throw new IllegalStateException("Only the text snapshot (items.txt) can be watched");
+        }
+        this.manager = manager;
+        this.fileName = file.getName();
+        this.listener = listener;
+        manager.trackItemsFile(policy);
+        this.watchService = FileSystems.getDefault().newWatchService();
+        manager.getDataDir().toPath().register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::run, "items-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void run() {
+        try {
+            while (true) {
+                boolean changed = drain(watchService.take());
+                if (!changed) {
+                    continue;
+                }
+                // Let the writer finish: wait until the directory has been quiet for a while
+                WatchKey next;
+                while ((next = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    drain(next);
+                }
+                try {
+                    Result result = manager.syncWithItemsFile();
+                    if (!result.isEmpty()) {
+                        listener.itemsFileMerged(result);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Error merging " + fileName + ": " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+    
+    // Whether the events concern the items file (or were lost to an overflow)
+    private boolean drain(WatchKey key) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            relevant |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                || fileName.equals(String.valueOf(event.context()));
+        }
+        key.reset();
+        return relevant;
+    }
+}
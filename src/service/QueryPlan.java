@@ -0,0 +1,91 @@
+package service;
+
+import model.GroceryItem;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// How GroceryManager runs an ItemQuery: a source (one index lookup, or every
+// item), the remaining filters as one predicate, and how to order and cut the
+// result. Nothing is read from the source until the stream is consumed.
+class QueryPlan {
+    private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.NONNULL;
+    private static final int INITIAL_HEAP = 64; // the heap grows as needed, so a huge limit allocates nothing up front
+    
+    private final String access;
+    private final long estimate;
+    private final Supplier<Iterator<GroceryItem>> source;
+    private final boolean sourceInExpiryOrder;
+    private final Predicate<GroceryItem> filter;
+    private final Comparator<GroceryItem> order;
+    private final int limit; // negative for none
+    
+    QueryPlan(String access, long estimate, Supplier<Iterator<GroceryItem>> source, boolean sourceInExpiryOrder,
+              Predicate<GroceryItem> filter, Comparator<GroceryItem> order, int limit) {
+        this.access = access;
+        this.estimate = estimate;
+        this.source = source;
+        this.sourceInExpiryOrder = sourceInExpiryOrder;
+        this.filter = filter;
+        this.order = order;
+        this.limit = limit;
+    }
+    
+    Stream<GroceryItem> stream() {
+        if (needsSort()) {
+            if (limit < 0) {
+                return matches().sorted(order); // every match is needed in order: a full sort
+            }
+            return StreamSupport.stream(() -> topK().spliterator(), CHARACTERISTICS | Spliterator.SIZED, false);
+        }
+        Stream<GroceryItem> matches = matches();
+        return limit < 0 ? matches : matches.limit(limit);
+    }
+    
+    // The source already delivers BY_EXPIRY order, so a limit can stop early
+    private boolean needsSort() {
+        return order != null && !(order == ItemQuery.BY_EXPIRY && sourceInExpiryOrder);
+    }
+    
+    private Stream<GroceryItem> matches() {
+        return StreamSupport.stream(() -> Spliterators.spliteratorUnknownSize(source.get(), CHARACTERISTICS),
+            CHARACTERISTICS, false).filter(filter);
+    }
+    
+    // Best `limit` matches: a max-heap (worst on top) of at most limit items, then sorted
+    private List<GroceryItem> topK() {
+        if (limit == 0) {
+            return Collections.emptyList();
+        }
+        PriorityQueue<GroceryItem> best = new PriorityQueue<>(Math.min(limit, INITIAL_HEAP) + 1, order.reversed());
+        Iterator<GroceryItem> items = source.get();
+        while (items.hasNext()) {
+            GroceryItem item = items.next();
+            if (!filter.test(item)) {
+                continue;
+            }
+            if (best.size() < limit) {
+                best.add(item);
+            } else if (order.compare(item, best.peek()) < 0) {
+                best.poll();
+                best.add(item);
+            }
+        }
+        List<GroceryItem> result = new ArrayList<>(best);
+        result.sort(order);
+        return result;
+    }
+    
+    @Override
+    public String toString() {
+        String plan = access + " (" + estimate + " candidates)";
+        if (needsSort()) {
+            plan += limit < 0 ? " -> sort" : " -> top " + limit + " by bounded heap";
+        } else if (limit >= 0) {
+            plan += " -> first " + limit;
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,113 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// The primary's recent mutations, numbered 1, 2, 3, ... in the order they were
+// applied, for ReplicationPrimary to ship to standbys. Records are in journal
+// form ({type, payload}) and kept in a ring of the last `capacity`; a standby
+// whose position has dropped out of the ring (or that follows another epoch,
+// i.e. an earlier run of the primary) catches up from a snapshot instead.
+//
+// reset() stands for a change no record describes (a backup restore, a merge
+// of an external edit of items.txt): it takes a sequence number of its own and
+// empties the ring, so every standby resyncs from a snapshot.
+class ReplicationLog {
+    private final long epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final String[] types;
+    private final String[] payloads;
+    private final long[] appendedAt; // wall-clock millis, for the standby's lag
+    private long last; // sequence of the newest record, 0 before the first
+    private long base; // records after base are in the ring
+    
+    // Records after a position, up to the newest at the time of the read
+    static class Batch {
+        final long first;
+        final long primaryLast; // newest sequence in the log
+        final long appendedAt; // when the first record was appended
+        final List<String[]> records;
+        
+        Batch(long first, long primaryLast, long appendedAt, List<String[]> records) {
+            this.first = first;
+            this.primaryLast = primaryLast;
+            this.appendedAt = appendedAt;
+            this.records = records;
+        }
+    }
+    
+    // The items as CSV text and the sequence they reflect
+    static class Snapshot {
+        final long position;
+        final int count;
+        final String text;
+        
+        Snapshot(long position, int count, String text) {
+            this.position = position;
+            this.count = count;
+            this.text = text;
+        }
+    }
+    
+    ReplicationLog(int capacity) {
+        this.types = new String[capacity];
+        this.payloads = new String[capacity];
+        this.appendedAt = new long[capacity];
+    }
+    
+    long getEpoch() {
+        return epoch;
+    }
+    
+    synchronized long getLast() {
+        return last;
+    }
+    
+    // Oldest position a standby can stream from; anything older needs a snapshot
+    synchronized long getBase() {
+        return base;
+    }
+    
+    synchronized void append(String type, String payload) {
+        last++;
+        int slot = (int) (last % types.length);
+        types[slot] = type;
+        payloads[slot] = payload;
+        appendedAt[slot] = System.currentTimeMillis();
+        if (last - base > types.length) {
+            base = last - types.length;
+        }
+        notifyAll();
+    }
+    
+    synchronized void reset() {
+        last++;
+        base = last;
+        Arrays.fill(types, null);
+        Arrays.fill(payloads, null);
+        notifyAll();
+    }
+    
+    // Up to maxRecords records after position, waiting up to timeoutMillis for the
+    // first; an empty batch if none arrived, null if position is behind the ring
+    synchronized Batch readAfter(long position, int maxRecords, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (last == position && position >= base && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        if (position < base || position > last) {
+            return null;
+        }
+        int count = (int) Math.min(last - position, maxRecords);
+        List<String[]> records = new ArrayList<>(count);
+        for (long sequence = position + 1; sequence <= position + count; sequence++) {
+            int slot = (int) (sequence % types.length);
+            records.add(new String[] { types[slot], payloads[slot] });
+        }
+        long firstAppended = count == 0 ? 0 : appendedAt[(int) ((position + 1) % types.length)];
+        return new Batch(position + 1, last, firstAppended, records);
+    }
+}
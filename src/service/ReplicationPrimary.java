@@ -0,0 +1,192 @@
+package service;
+
+import util.Metrics;
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Ships a manager's mutations to warm standbys (ReplicationStandby, usually in
+// another process) over TCP. From construction on every add, delete, quantity
+// change and use goes into a ReplicationLog. Each standby that connects gets a
+// sender thread, which streams the log from the standby's position in batched
+// frames (see ReplicationProtocol). If the position is no longer in the log,
+// or belongs to an earlier run of the primary, it sends a snapshot first.
+//
+// The manager must be safe to call from another thread (ConcurrentGroceryManager).
+// Standbys lag by however long a frame takes to cross the socket and be applied;
+// nothing waits for them, so changes acknowledged here can be lost with this box.
+public class ReplicationPrimary implements Closeable {
+    // Records kept for standbys that reconnect (-Dset.replication.backlog); older positions get a snapshot
+    private static final int BACKLOG = Integer.getInteger("set.replication.backlog", 100_000);
+    // Most records per batch frame
+    private static final int MAX_BATCH = 4096;
+    
+    private static final Metrics.Counter RECORDS_SHIPPED = Metrics.counter("replication.recordsShipped");
+    private static final Metrics.Counter FRAMES_SHIPPED = Metrics.counter("replication.framesShipped");
+    private static final Metrics.Counter BYTES_SHIPPED = Metrics.counter("replication.bytesShipped");
+    private static final Metrics.Counter SNAPSHOTS_SHIPPED = Metrics.counter("replication.snapshotsShipped");
+    private static final Metrics.Timer SEND_SNAPSHOT = Metrics.timer("replication.sendSnapshot");
+    
+    private final GroceryManager manager;
+    private final ReplicationLog log;
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+    private final Set<Follower> followers = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+    
+    // Start logging the manager's mutations and accept standbys on the port (0 for any free port)
+    public ReplicationPrimary(GroceryManager manager, int port) throws IOException {
+        this.manager = manager;
+        this.log = new ReplicationLog(BACKLOG);
+        this.serverSocket = new ServerSocket(port);
+        manager.startShipping(log);
+        this.acceptor = new Thread(this::accept, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+    
+    // Actual port (useful when started on port 0)
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+    
+    public int getStandbyCount() {
+        return followers.size();
+    }
+    
+    // Log position and, per connected standby, the position it acknowledged and how many records it is behind
+    public Map<String, Object> getStatus() {
+        long last = log.getLast();
+        List<Map<String, Object>> standbys = new ArrayList<>();
+        for (Follower follower : followers) {
+            Map<String, Object> standby = new LinkedHashMap<>();
+            standby.put("address", follower.address);
+            standby.put("acknowledged", follower.acknowledged);
+            standby.put("lagRecords", Math.max(last - follower.acknowledged, 0));
+            standbys.add(standby);
+        }
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", "primary");
+        status.put("port", getPort());
+        status.put("position", last);
+        status.put("standbys", standbys);
+        return status;
+    }
+    
+    // Disconnect every standby and stop logging; standbys keep retrying until this port answers again
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+        List<Follower> connected = new ArrayList<>(followers);
+        for (Follower follower : connected) {
+            follower.close();
+        }
+        try {
+            acceptor.join();
+            for (Follower follower : connected) {
+                follower.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        manager.stopShipping();
+    }
+    
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                Follower follower = new Follower(socket);
+                followers.add(follower);
+                follower.thread.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Error accepting standby: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    // One connected standby and its sender thread
+    private class Follower {
+        private final Socket socket;
+        private final String address;
+        private final Thread thread;
+        private volatile long acknowledged;
+        
+        Follower(Socket socket) {
+            this.socket = socket;
+            this.address = socket.getRemoteSocketAddress().toString();
+            this.thread = new Thread(this::run, "replication-sender " + address);
+            thread.setDaemon(true);
+        }
+        
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+            thread.interrupt();
+        }
+        
+        private void run() {
+            try (Socket connection = socket) {
+                connection.setTcpNoDelay(true);
+                connection.setSoTimeout(ReplicationProtocol.TIMEOUT_MILLIS);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream(), 1 << 16));
+                long[] hello = ReplicationProtocol.readHello(in);
+                // Another epoch's positions mean nothing here: start from a snapshot
+                long position = hello[0] == log.getEpoch() ? hello[1] : -1;
+                acknowledged = Math.max(position, 0);
+                while (!closed) {
+                    ReplicationLog.Batch batch = log.readAfter(position, MAX_BATCH, ReplicationProtocol.HEARTBEAT_MILLIS);
+                    if (batch == null) {
+                        position = sendSnapshot(out);
+                        continue;
+                    }
+                    if (batch.records.isEmpty()) {
+                        ReplicationProtocol.writeHeartbeat(out, batch.primaryLast);
+                    } else {
+                        BYTES_SHIPPED.add(ReplicationProtocol.writeBatch(out, batch));
+                        FRAMES_SHIPPED.increment();
+                        RECORDS_SHIPPED.add(batch.records.size());
+                        position = batch.first + batch.records.size() - 1;
+                    }
+                    out.flush();
+                    // Acknowledgements only feed the lag figures, so read whatever has arrived without waiting
+                    while (in.available() >= Long.BYTES) {
+                        acknowledged = in.readLong();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Closed
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Standby " + address + " disconnected: " + e.getMessage());
+                }
+            } finally {
+                followers.remove(this);
+            }
+        }
+        
+        // Returns the position the snapshot reflects
+        private long sendSnapshot(DataOutputStream out) throws IOException {
+            long start = Metrics.start();
+            ReplicationLog.Snapshot snapshot = manager.replicationSnapshot();
+            BYTES_SHIPPED.add(ReplicationProtocol.writeSnapshot(out, log.getEpoch(), snapshot));
+            out.flush();
+            SNAPSHOTS_SHIPPED.increment();
+            SEND_SNAPSHOT.stop(start);
+            return snapshot.position;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package service;
+
+import model.GroceryItem;
+import util.ItemCsvReader;
+import util.Journal;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Frames exchanged by ReplicationPrimary and ReplicationStandby over one TCP
+// connection (DataOutput, big-endian):
+//
+//   standby -> primary   hello      int MAGIC, int VERSION, long epoch, long position
+//                                   (epoch 0 when the standby has nothing to resume)
+//                        ack        long position, after each frame it applied
+//   primary -> standby   snapshot   'S', long epoch, long position, int count, int length, CSV text
+//                        batch      'B', long first, long primaryLast, long appendedAt, int count,
+//                                   int length, journal lines (Journal.formatRecord)
+//                        heartbeat  'H', long primaryLast (when idle)
+//
+// Batches carry every record that arrived while the previous frame was being
+// sent, so a busy primary sends few large frames rather than one per change.
+final class ReplicationProtocol {
+    static final int MAGIC = 0x53455452; // "SETR"
+    static final int VERSION = 1;
+    static final byte SNAPSHOT = 'S';
+    static final byte BATCH = 'B';
+    static final byte HEARTBEAT = 'H';
+    
+    // An idle primary sends a heartbeat this often. A standby that hears nothing
+    // for TIMEOUT_MILLIS drops the connection and reconnects; that is long enough
+    // for the primary to write out a large snapshot before sending it.
+    static final int HEARTBEAT_MILLIS = 500;
+    static final int TIMEOUT_MILLIS = 10_000;
+    
+    private ReplicationProtocol() {
+    }
+    
+    static void writeHello(DataOutputStream out, long epoch, long position) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(epoch);
+        out.writeLong(position);
+        out.flush();
+    }
+    
+    // {epoch, position} from a standby's hello
+    static long[] readHello(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a S.E.T standby, or another protocol version");
+        }
+        return new long[] { in.readLong(), in.readLong() };
+    }
+    
+    // Returns the bytes written
+    static int writeSnapshot(DataOutputStream out, long epoch, ReplicationLog.Snapshot snapshot) throws IOException {
+        byte[] text = snapshot.text.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(SNAPSHOT);
+        out.writeLong(epoch);
+        out.writeLong(snapshot.position);
+        out.writeInt(snapshot.count);
+        out.writeInt(text.length);
+        out.write(text);
+        return text.length + 25;
+    }
+    
+    static int writeBatch(DataOutputStream out, ReplicationLog.Batch batch) throws IOException {
+        StringBuilder lines = new StringBuilder(batch.records.size() * 64);
+        for (String[] record : batch.records) {
+            Journal.formatRecord(record[0], record[1], lines);
+        }
+        byte[] text = lines.toString().getBytes(StandardCharsets.UTF_8);
+        out.writeByte(BATCH);
+        out.writeLong(batch.first);
+        out.writeLong(batch.primaryLast);
+        out.writeLong(batch.appendedAt);
+        out.writeInt(batch.records.size());
+        out.writeInt(text.length);
+        out.write(text);
+        return text.length + 33;
+    }
+    
+    static void writeHeartbeat(DataOutputStream out, long primaryLast) throws IOException {
+        out.writeByte(HEARTBEAT);
+        out.writeLong(primaryLast);
+    }
+    
+    static byte[] readText(DataInputStream in) throws IOException {
+        byte[] text = new byte[in.readInt()];
+        in.readFully(text);
+        return text;
+    }
+    
+    // Items of a snapshot frame's text
+    static List<GroceryItem> parseItems(byte[] text, int count) throws IOException {
+        List<GroceryItem> items = new ArrayList<>(count);
+        try (ItemCsvReader reader = new ItemCsvReader(
+                new InputStreamReader(new ByteArrayInputStream(text), StandardCharsets.UTF_8))) {
+            GroceryItem item;
+            while ((item = reader.next()) != null) {
+                items.add(item);
+            }
+        }
+        if (items.size() != count) {
+            throw new IOException("Snapshot held " + items.size() + " readable item(s), expected " + count);
+        }
+        return items;
+    }
+    
+    // {type, payload} records of a batch frame's text
+    static List<String[]> parseRecords(byte[] text, int count) throws IOException {
+        List<String[]> records = new ArrayList<>(count);
+        String lines = new String(text, StandardCharsets.UTF_8);
+        int start = 0;
+        while (start < lines.length()) {
+            int end = lines.indexOf('\n', start);
+            String[] record = Journal.parseRecord(lines.substring(start, end < 0 ? lines.length() : end));
+            if (record != null) {
+                records.add(record);
+            }
+            start = end < 0 ? lines.length() : end + 1;
+        }
+        if (records.size() != count) {
+            throw new IOException("Batch held " + records.size() + " record(s), expected " + count);
+        }
+        return records;
+    }
+}
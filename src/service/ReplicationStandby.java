@@ -0,0 +1,205 @@
+package service;
+
+import model.GroceryItem;
+import util.Metrics;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keeps a manager a warm, read-only copy of a primary's inventory (see
+// ReplicationPrimary). A background thread connects to the primary. It takes
+// a snapshot when it has nothing to resume from, then applies each shipped
+// batch under one write lock and acknowledges it. After a disconnect it
+// reconnects, backing off up to 5 s, and resumes from its position. If the
+// primary's log no longer reaches back that far, or the primary restarted, it
+// takes a new snapshot instead.
+//
+// Nothing else should change the manager: the next snapshot would overwrite
+// it. The position is kept in memory only, so a restarted standby serves its
+// stored copy until the first snapshot arrives.
+public class ReplicationStandby implements Closeable {
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+    
+    // Primary append to standby apply (wall clock, so both should share a host or a time source)
+    private static final Metrics.Timer APPLY_LAG = Metrics.timer("replication.applyLag");
+    // Receiving and swapping in a snapshot
+    private static final Metrics.Timer CATCH_UP = Metrics.timer("replication.catchUp");
+    private static final Metrics.Counter RECORDS_APPLIED = Metrics.counter("replication.recordsApplied");
+    private static final Metrics.Counter SNAPSHOTS_APPLIED = Metrics.counter("replication.snapshotsApplied");
+    private static final Metrics.Counter RECONNECTS = Metrics.counter("replication.reconnects");
+    
+    private final GroceryManager manager;
+    private final String host;
+    private final int port;
+    private final Thread thread;
+    private volatile Socket socket;
+    private volatile boolean closed;
+    private volatile boolean connected;
+    
+    // Which run of the primary the position belongs to (0 before the first snapshot)
+    private volatile long epoch;
+    private volatile long position;
+    private volatile long primaryPosition;
+    private volatile long lagMillis; // of the last batch applied
+    
+    // Start following the primary in the background; the manager must be safe to
+    // read from other threads while batches are applied (ConcurrentGroceryManager)
+    public ReplicationStandby(GroceryManager manager, String host, int port) {
+        this.manager = manager;
+        this.host = host;
+        this.port = port;
+        this.thread = new Thread(this::run, "replication-standby");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    // Follow a primary given as "host:port" (the form of -Dset.replication.primary)
+    public static ReplicationStandby follow(GroceryManager manager, String primary) {
+        int colon = primary.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Primary must be host:port: " + primary);
+        }
+        return new ReplicationStandby(manager, primary.substring(0, colon), Integer.parseInt(primary.substring(colon + 1)));
+    }
+    
+    public boolean isConnected() {
+        return connected;
+    }
+    
+    // Last primary log position applied here
+    public long getPosition() {
+        return position;
+    }
+    
+    // Records the primary had logged, as of its last frame, that are not applied here yet
+    public long getLagRecords() {
+        return Math.max(primaryPosition - position, 0);
+    }
+    
+    // Wait until the primary's log position is applied here; false on timeout
+    public synchronized boolean awaitPosition(long target, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (position < target && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return position >= target;
+    }
+    
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", "standby");
+        status.put("primary", host + ":" + port);
+        status.put("connected", connected);
+        status.put("position", position);
+        status.put("primaryPosition", primaryPosition);
+        status.put("lagRecords", getLagRecords());
+        status.put("lagMillis", getLagRecords() == 0 ? 0 : lagMillis);
+        return status;
+    }
+    
+    // Stop following; the manager keeps the inventory as last applied
+    @Override
+    public void close() {
+        closed = true;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void run() {
+        long backoff = MIN_BACKOFF_MILLIS;
+        while (!closed) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(new InetSocketAddress(host, port), ReplicationProtocol.TIMEOUT_MILLIS);
+                connection.setTcpNoDelay(true);
+                connection.setSoTimeout(ReplicationProtocol.TIMEOUT_MILLIS);
+                connected = true;
+                backoff = MIN_BACKOFF_MILLIS;
+                follow(new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16)),
+                    new DataOutputStream(new BufferedOutputStream(connection.getOutputStream())));
+            } catch (IOException | RuntimeException e) {
+                if (closed) {
+                    break;
+                }
+                if (connected) {
+                    System.err.println("Lost primary " + host + ":" + port + ": "
+                        + (e instanceof EOFException ? "connection closed" : e.getMessage()));
+                }
+                connected = false;
+                RECONNECTS.increment();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+        connected = false;
+    }
+    
+    // Apply frames until the connection fails
+    private void follow(DataInputStream in, DataOutputStream out) throws IOException {
+        ReplicationProtocol.writeHello(out, epoch, position);
+        while (true) {
+            byte kind = in.readByte();
+            switch (kind) {
+                case ReplicationProtocol.SNAPSHOT -> {
+                    long start = Metrics.start();
+                    long snapshotEpoch = in.readLong();
+                    long snapshotPosition = in.readLong();
+                    int count = in.readInt();
+                    List<GroceryItem> items = ReplicationProtocol.parseItems(ReplicationProtocol.readText(in), count);
+                    manager.replaceReplicated(items);
+                    epoch = snapshotEpoch;
+                    advance(snapshotPosition, snapshotPosition);
+                    SNAPSHOTS_APPLIED.increment();
+                    CATCH_UP.stop(start);
+                }
+                case ReplicationProtocol.BATCH -> {
+                    long first = in.readLong();
+                    long primaryLast = in.readLong();
+                    long appendedAt = in.readLong();
+                    int count = in.readInt();
+                    List<String[]> records = ReplicationProtocol.parseRecords(ReplicationProtocol.readText(in), count);
+                    if (first != position + 1) {
+                        throw new IOException("Batch starts at " + first + ", expected " + (position + 1));
+                    }
+                    manager.applyReplicated(records);
+                    lagMillis = Math.max(System.currentTimeMillis() - appendedAt, 0);
+                    APPLY_LAG.record(lagMillis * 1_000_000);
+                    RECORDS_APPLIED.add(count);
+                    advance(first + count - 1, primaryLast);
+                }
+                case ReplicationProtocol.HEARTBEAT -> primaryPosition = in.readLong();
+                default -> throw new IOException("Unknown frame type " + kind);
+            }
+            out.writeLong(position);
+            out.flush();
+        }
+    }
+    
+    private synchronized void advance(long applied, long primaryLast) {
+        position = applied;
+        primaryPosition = Math.max(primaryLast, applied);
+        notifyAll();
+    }
+}
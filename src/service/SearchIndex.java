@@ -0,0 +1,196 @@
+package service;
+
+import java.util.*;
+
+// Incremental name index: an n-gram inverted index (1- to 3-grams) for
+// substring search plus a trie for prefix search and autocomplete.
+// Keys are case-folded strings; each key is reference-counted so that
+// several items may share a name.
+public class SearchIndex {
+    private static final int GRAM = 3;
+    private static final int INITIAL_HEAP = 64;
+    
+    private final Map<String, Set<String>> grams = new HashMap<>();
+    private final Map<String, Integer> keyCounts = new HashMap<>();
+    private final TrieNode root = new TrieNode();
+    
+    private static class TrieNode {
+        private final TreeMap<Character, TrieNode> children = new TreeMap<>();
+        private String value; // set when a key ends at this node
+    }
+    
+    // Register one occurrence of a key; value is what prefix lookups return for it
+    public void add(String key, String value) {
+        if (keyCounts.merge(key, 1, Integer::sum) > 1) {
+            return;
+        }
+        for (String gram : gramsOf(key)) {
+            grams.computeIfAbsent(gram, g -> new HashSet<>()).add(key);
+        }
+        TrieNode node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.computeIfAbsent(key.charAt(i), c -> new TrieNode());
+        }
+        node.value = value;
+    }
+    
+    public void add(String key) {
+        add(key, key);
+    }
+    
+    // Drop one occurrence of a key; the key leaves the index with its last occurrence
+    public void remove(String key) {
+        Integer count = keyCounts.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            keyCounts.put(key, count - 1);
+            return;
+        }
+        keyCounts.remove(key);
+        for (String gram : gramsOf(key)) {
+            Set<String> keys = grams.get(gram);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                grams.remove(gram);
+            }
+        }
+        removeFromTrie(key);
+    }
+    
+    // All keys containing the query
+    public List<String> findContaining(String query) {
+        if (query.isEmpty()) {
+            return new ArrayList<>(keyCounts.keySet());
+        }
+        if (query.length() <= GRAM) {
+            Set<String> keys = grams.get(query);
+            return keys == null ? new ArrayList<>() : new ArrayList<>(keys);
+        }
+        
+        // Intersect the posting lists of the query's trigrams, smallest first
+        List<Set<String>> postings = new ArrayList<>();
+        for (int i = 0; i + GRAM <= query.length(); i++) {
+            Set<String> keys = grams.get(query.substring(i, i + GRAM));
+            if (keys == null) {
+                return new ArrayList<>();
+            }
+            postings.add(keys);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+        
+        List<String> result = new ArrayList<>();
+        for (String key : postings.get(0)) {
+            if (key.contains(query)) {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+    
+    // Best keys containing the query: exact match, then prefix, then word start,
+    // then anywhere; earlier and shorter matches first. A negative limit throws
+    // IllegalArgumentException.
+    public List<String> search(String query, int limit) {
+        checkLimit(limit);
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+        Comparator<String> ranking = Comparator
+            .comparingInt((String key) -> rank(key, query))
+            .thenComparingInt(key -> key.indexOf(query))
+            .thenComparingInt(String::length)
+            .thenComparing(Comparator.naturalOrder());
+        
+        // Bounded max-heap keeps the best `limit` keys without sorting all matches;
+        // it grows as needed, so a huge limit does not allocate up front
+        PriorityQueue<String> best = new PriorityQueue<>(Math.min(limit, INITIAL_HEAP) + 1, ranking.reversed());
+        for (String key : findContaining(query)) {
+            best.add(key);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<String> result = new ArrayList<>(best);
+        result.sort(ranking);
+        return result;
+    }
+    
+    // Values of keys starting with the prefix, in alphabetical order (limit as for search)
+    public List<String> complete(String prefix, int limit) {
+        checkLimit(limit);
+        TrieNode node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        List<String> result = new ArrayList<>();
+        if (node != null) {
+            collect(node, result, limit);
+        }
+        return result;
+    }
+    
+    private static void checkLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative: " + limit);
+        }
+    }
+    
+    private static void collect(TrieNode node, List<String> result, int limit) {
+        if (result.size() >= limit) {
+            return;
+        }
+        if (node.value != null) {
+            result.add(node.value);
+        }
+        for (TrieNode child : node.children.values()) {
+            collect(child, result, limit);
+        }
+    }
+    
+    private void removeFromTrie(String key) {
+        TrieNode[] path = new TrieNode[key.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < key.length(); i++) {
+            path[i + 1] = path[i].children.get(key.charAt(i));
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+        path[key.length()].value = null;
+        
+        // Prune nodes that no longer lead to any key
+        for (int i = key.length(); i > 0; i--) {
+            TrieNode node = path[i];
+            if (node.value != null || !node.children.isEmpty()) {
+                break;
+            }
+            path[i - 1].children.remove(key.charAt(i - 1));
+        }
+    }
+    
+    private static int rank(String key, String query) {
+        if (key.equals(query)) {
+            return 0;
+        }
+        if (key.startsWith(query)) {
+            return 1;
+        }
+        for (int i = key.indexOf(query, 1); i > 0; i = key.indexOf(query, i + 1)) {
+            if (key.charAt(i - 1) == ' ') {
+                return 2;
+            }
+        }
+        return 3;
+    }
+    
+    private static Set<String> gramsOf(String key) {
+        Set<String> result = new HashSet<>();
+        for (int length = 1; length <= GRAM; length++) {
+            for (int i = 0; i + length <= key.length(); i++) {
+                result.add(key.substring(i, i + length));
+            }
+        }
+        return result;
+    }
+}
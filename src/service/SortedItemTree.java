@@ -0,0 +1,460 @@
+package service;
+
+import model.GroceryItem;
+import java.util.*;
+
+// Items kept in one sort order as a persistent B+-tree (up to 64 items per leaf,
+// 64 children per branch, subtree sizes for positional access). snapshot() is an
+// immutable List view that costs O(1): it shares the current nodes and is cached
+// until the next change. Changes edit nodes in place until a snapshot has seen
+// them; after that the first change copies only the path it touches, so a
+// snapshot never changes and an unchanged tree can be listed repeatedly without
+// allocating anything proportional to its size.
+//
+// The order must be total (distinct items never compare equal); GroceryManager
+// breaks ties by insertion sequence. Item fields are not copied, so a snapshot
+// shows later in-place edits such as quantity updates; it never shows items
+// added or removed after it was taken. Not thread-safe: callers synchronize
+// changes against snapshot() themselves.
+class SortedItemTree {
+    private static final int MAX = 64;
+    private static final int MIN = MAX / 4; // merge a node with a neighbour below this
+    
+    private final Comparator<GroceryItem> order;
+    private Node root;
+    // Nodes whose edit is this token have never been seen by a snapshot and may change in place
+    private Object edit = new Object();
+    private Snapshot snapshot; // cached until the next change
+    
+    SortedItemTree(Comparator<GroceryItem> order) {
+        this.order = order;
+        this.root = new Leaf(edit);
+    }
+    
+    int size() {
+        return root.size;
+    }
+    
+    void add(GroceryItem item) {
+        root = editable(root);
+        Node split = root.insert(item, this);
+        if (split != null) {
+            Branch grown = new Branch(edit);
+            grown.append(root);
+            grown.append(split);
+            root = grown;
+        }
+    }
+    
+    // False if the item is not in the tree
+    boolean remove(GroceryItem item) {
+        if (!contains(item)) {
+            return false;
+        }
+        root = editable(root);
+        root.delete(item, this);
+        if (root.count == 0) {
+            root = new Leaf(edit);
+        }
+        while (root instanceof Branch && root.count == 1) {
+            root = ((Branch) root).children[0];
+        }
+        return true;
+    }
+    
+    // Replace the contents with items already in this tree's order, packing nodes full
+    void build(List<GroceryItem> sorted) {
+        clear();
+        List<Node> level = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); i += MAX) {
+            Leaf leaf = new Leaf(edit);
+            for (GroceryItem item : sorted.subList(i, Math.min(i + MAX, sorted.size()))) {
+                leaf.items[leaf.count++] = item;
+            }
+            leaf.size = leaf.count;
+            level.add(leaf);
+        }
+        while (level.size() > 1) {
+            List<Node> parents = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += MAX) {
+                Branch branch = new Branch(edit);
+                for (Node child : level.subList(i, Math.min(i + MAX, level.size()))) {
+                    branch.append(child);
+                }
+                parents.add(branch);
+            }
+            level = parents;
+        }
+        if (!level.isEmpty()) {
+            root = level.get(0);
+        }
+    }
+    
+    // Add items already in this tree's order, each of which sorts after every item
+    // here with an equal key (an order this tree's order refines), and rebuild
+    // packed nodes in one pass. Placing the items takes O(log n) key comparisons
+    // each, with no tie-breaks; the rebuild copies the n items already here.
+    void merge(List<GroceryItem> sorted, Comparator<GroceryItem> key) {
+        GroceryItem[] current = new GroceryItem[root.size];
+        flatten(root, current, 0);
+        GroceryItem[] merged = new GroceryItem[current.length + sorted.size()];
+        int copied = 0;
+        int filled = 0;
+        for (GroceryItem item : sorted) {
+            // First item here with a greater key
+            int low = copied;
+            int high = current.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (key.compare(current[middle], item) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            System.arraycopy(current, copied, merged, filled, low - copied);
+            filled += low - copied;
+            copied = low;
+            merged[filled++] = item;
+        }
+        System.arraycopy(current, copied, merged, filled, current.length - copied);
+        build(Arrays.asList(merged));
+    }
+    
+    // Copy a subtree's items into target from offset, in order; returns the offset after them
+    private static int flatten(Node node, GroceryItem[] target, int offset) {
+        if (node instanceof Leaf) {
+            System.arraycopy(((Leaf) node).items, 0, target, offset, node.count);
+            return offset + node.count;
+        }
+        Branch branch = (Branch) node;
+        for (int i = 0; i < branch.count; i++) {
+            offset = flatten(branch.children[i], target, offset);
+        }
+        return offset;
+    }
+    
+    // Drop every item (the old nodes stay with any snapshot holding them)
+    void clear() {
+        edit = new Object();
+        snapshot = null;
+        root = new Leaf(edit);
+    }
+    
+    // Immutable view of the current contents, in order
+    List<GroceryItem> snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = new Snapshot(root);
+            snapshot = current;
+        }
+        return current;
+    }
+    
+    private boolean contains(GroceryItem item) {
+        Node node = root;
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            int index = branch.childFor(item, order);
+            if (index == branch.count) {
+                return false;
+            }
+            node = branch.children[index];
+        }
+        Leaf leaf = (Leaf) node;
+        int index = Arrays.binarySearch(leaf.items, 0, leaf.count, item, order);
+        return index >= 0 && leaf.items[index] == item;
+    }
+    
+    // A node this edit may change: itself if no snapshot has seen it, else a copy.
+    // The first change after a snapshot starts a new edit so no shared node is touched.
+    private Node editable(Node node) {
+        if (snapshot != null) {
+            snapshot = null;
+            edit = new Object();
+        }
+        return node.edit == edit ? node : node.copy(edit);
+    }
+    
+    private abstract static class Node {
+        final Object edit;
+        int count; // items in a leaf, children in a branch
+        int size; // items in the subtree
+        
+        Node(Object edit) {
+            this.edit = edit;
+        }
+        
+        abstract GroceryItem last();
+        abstract Node copy(Object edit);
+        // Insert into this (editable) node; returns the new right sibling if it split
+        abstract Node insert(GroceryItem item, SortedItemTree tree);
+        // Remove an item known to be in this (editable) subtree
+        abstract void delete(GroceryItem item, SortedItemTree tree);
+        // Move every entry of the right neighbour into this (editable) node
+        abstract void absorb(Node right);
+    }
+    
+    private static final class Leaf extends Node {
+        final GroceryItem[] items = new GroceryItem[MAX + 1]; // one spare slot before a split
+        
+        Leaf(Object edit) {
+            super(edit);
+        }
+        
+        @Override
+        GroceryItem last() {
+            return items[count - 1];
+        }
+        
+        @Override
+        Node copy(Object edit) {
+            Leaf copy = new Leaf(edit);
+            System.arraycopy(items, 0, copy.items, 0, count);
+            copy.count = count;
+            copy.size = size;
+            return copy;
+        }
+        
+        @Override
+        Node insert(GroceryItem item, SortedItemTree tree) {
+            int index = -Arrays.binarySearch(items, 0, count, item, tree.order) - 1;
+            System.arraycopy(items, index, items, index + 1, count - index);
+            items[index] = item;
+            count++;
+            size++;
+            if (count <= MAX) {
+                return null;
+            }
+            // Appending at the end (insertion order) leaves this leaf full instead of half empty
+            int keep = index == count - 1 ? MAX : count / 2;
+            Leaf right = new Leaf(tree.edit);
+            right.count = count - keep;
+            right.size = right.count;
+            System.arraycopy(items, keep, right.items, 0, right.count);
+            Arrays.fill(items, keep, count, null);
+            count = keep;
+            size = keep;
+            return right;
+        }
+        
+        @Override
+        void delete(GroceryItem item, SortedItemTree tree) {
+            int index = Arrays.binarySearch(items, 0, count, item, tree.order);
+            System.arraycopy(items, index + 1, items, index, count - index - 1);
+            items[--count] = null;
+            size--;
+        }
+        
+        @Override
+        void absorb(Node right) {
+            Leaf leaf = (Leaf) right;
+            System.arraycopy(leaf.items, 0, items, count, leaf.count);
+            count += leaf.count;
+            size += leaf.size;
+        }
+    }
+    
+    private static final class Branch extends Node {
+        final Node[] children = new Node[MAX + 1];
+        final GroceryItem[] lasts = new GroceryItem[MAX + 1]; // last item of each child
+        
+        Branch(Object edit) {
+            super(edit);
+        }
+        
+        // First child whose last item is not before the item; count if there is none
+        int childFor(GroceryItem item, Comparator<GroceryItem> order) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (order.compare(lasts[mid], item) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+        
+        void append(Node child) {
+            children[count] = child;
+            lasts[count] = child.last();
+            count++;
+            size += child.size;
+        }
+        
+        @Override
+        GroceryItem last() {
+            return lasts[count - 1];
+        }
+        
+        @Override
+        Node copy(Object edit) {
+            Branch copy = new Branch(edit);
+            System.arraycopy(children, 0, copy.children, 0, count);
+            System.arraycopy(lasts, 0, copy.lasts, 0, count);
+            copy.count = count;
+            copy.size = size;
+            return copy;
+        }
+        
+        @Override
+        Node insert(GroceryItem item, SortedItemTree tree) {
+            int index = Math.min(childFor(item, tree.order), count - 1);
+            Node child = tree.editable(children[index]);
+            children[index] = child;
+            Node split = child.insert(item, tree);
+            lasts[index] = child.last();
+            size++;
+            if (split == null) {
+                return null;
+            }
+            System.arraycopy(children, index + 1, children, index + 2, count - index - 1);
+            System.arraycopy(lasts, index + 1, lasts, index + 2, count - index - 1);
+            children[index + 1] = split;
+            lasts[index + 1] = split.last();
+            count++;
+            if (count <= MAX) {
+                return null;
+            }
+            int keep = index == count - 2 ? MAX : count / 2;
+            Branch right = new Branch(tree.edit);
+            for (int i = keep; i < count; i++) {
+                right.append(children[i]);
+                size -= children[i].size;
+            }
+            Arrays.fill(children, keep, count, null);
+            Arrays.fill(lasts, keep, count, null);
+            count = keep;
+            return right;
+        }
+        
+        @Override
+        void delete(GroceryItem item, SortedItemTree tree) {
+            int index = childFor(item, tree.order);
+            Node child = tree.editable(children[index]);
+            children[index] = child;
+            child.delete(item, tree);
+            size--;
+            if (child.count == 0) {
+                removeChild(index);
+                return;
+            }
+            lasts[index] = child.last();
+            if (child.count < MIN) {
+                // Merge with a neighbour when both fit in one node
+                int left = index > 0 && children[index - 1].count + child.count <= MAX ? index - 1
+                    : index + 1 < count && children[index + 1].count + child.count <= MAX ? index : -1;
+                if (left >= 0) {
+                    Node merged = tree.editable(children[left]);
+                    merged.absorb(children[left + 1]);
+                    children[left] = merged;
+                    lasts[left] = merged.last();
+                    removeChild(left + 1);
+                }
+            }
+        }
+        
+        @Override
+        void absorb(Node right) {
+            Branch branch = (Branch) right;
+            for (int i = 0; i < branch.count; i++) {
+                append(branch.children[i]);
+            }
+        }
+        
+        // Drop a child slot without changing size (its items are already accounted for)
+        private void removeChild(int index) {
+            System.arraycopy(children, index + 1, children, index, count - index - 1);
+            System.arraycopy(lasts, index + 1, lasts, index, count - index - 1);
+            count--;
+            children[count] = null;
+            lasts[count] = null;
+        }
+    }
+    
+    // Read-only list over a fixed root; get is O(log n), iteration walks the leaves
+    private static final class Snapshot extends AbstractList<GroceryItem> implements RandomAccess {
+        private final Node root;
+        
+        Snapshot(Node root) {
+            this.root = root;
+        }
+        
+        @Override
+        public int size() {
+            return root.size;
+        }
+        
+        @Override
+        public GroceryItem get(int index) {
+            Objects.checkIndex(index, root.size);
+            Node node = root;
+            while (node instanceof Branch) {
+                Branch branch = (Branch) node;
+                int child = 0;
+                while (index >= branch.children[child].size) {
+                    index -= branch.children[child].size;
+                    child++;
+                }
+                node = branch.children[child];
+            }
+            return ((Leaf) node).items[index];
+        }
+        
+        @Override
+        public Iterator<GroceryItem> iterator() {
+            return new Iterator<>() {
+                // Branches on the path to the current leaf, and the child taken in each
+                private final Deque<Branch> path = new ArrayDeque<>();
+                private final Deque<Integer> taken = new ArrayDeque<>();
+                private Leaf leaf = descend(root);
+                private int position;
+                
+                private Leaf descend(Node node) {
+                    while (node instanceof Branch) {
+                        path.push((Branch) node);
+                        taken.push(0);
+                        node = ((Branch) node).children[0];
+                    }
+                    return (Leaf) node;
+                }
+                
+                @Override
+                public boolean hasNext() {
+                    while (position == leaf.count) {
+                        // Climb to the first branch with a child left, then down to its leftmost leaf
+                        while (!path.isEmpty() && taken.peek() + 1 == path.peek().count) {
+                            path.pop();
+                            taken.pop();
+                        }
+                        if (path.isEmpty()) {
+                            return false;
+                        }
+                        int next = taken.pop() + 1;
+                        taken.push(next);
+                        leaf = descend(path.peek().children[next]);
+                        position = 0;
+                    }
+                    return true;
+                }
+                
+                @Override
+                public GroceryItem next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return leaf.items[position++];
+                }
+            };
+        }
+        
+        @Override
+        public Spliterator<GroceryItem> spliterator() {
+            return Spliterators.spliterator(iterator(), size(),
+                Spliterator.ORDERED | Spliterator.SIZED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        }
+    }
+}
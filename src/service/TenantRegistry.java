@@ -0,0 +1,273 @@
+package service;
+
+import model.GroceryItem;
+import util.DayClock;
+import util.FileHandler;
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+// Inventories partitioned by tenant (a store or household). Each tenant has its
+// own ConcurrentGroceryManager shard stored in <data dir>/tenants/<id>/, loaded
+// on first access. Loaded shards are kept in least-recently-used order; once the
+// estimated heap of all loaded shards exceeds the memory budget
+// (-Dset.tenant.memoryBudgetMB, default 256) the least recently used idle shards
+// are closed and dropped until it fits again. A shard in use is never evicted.
+// Cross-tenant queries run on every tenant in parallel.
+public class TenantRegistry {
+    private static final Pattern TENANT_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final long DEFAULT_BUDGET_BYTES = Long.getLong("set.tenant.memoryBudgetMB", 256) << 20;
+    // Measured heap per loaded item (item, name, lot and index entries) and per empty shard
+    private static final long BYTES_PER_ITEM = 360;
+    private static final long BYTES_PER_SHARD = 16 * 1024;
+    
+    private final File root;
+    private final DayClock clock;
+    private final long memoryBudgetBytes;
+    private final ExecutorService queryPool;
+    
+    // Access-ordered, so iteration starts at the least recently used tenant.
+    // Guarded by this; a shard's manager is loaded and unloaded under the shard's
+    // own monitor so different tenants load in parallel.
+    private final LinkedHashMap<String, Shard> shards = new LinkedHashMap<>(16, 0.75f, true);
+    private long estimatedBytes;
+    private long loads;
+    private long evictions;
+    private boolean closed;
+    
+    private static class Shard {
+        private final String tenant;
+        private final File dataDir;
+        private GroceryManager manager; // null while not loaded
+        private int pins; // callers currently using the manager; guarded by the registry
+        private long bytes; // last estimate added to estimatedBytes; guarded by the registry
+        
+        private Shard(String tenant, File dataDir) {
+            this.tenant = tenant;
+            this.dataDir = dataDir;
+        }
+    }
+    
+    public TenantRegistry() {
+        this(new File(FileHandler.getDataDir(), "tenants"), DayClock.system(), DEFAULT_BUDGET_BYTES);
+    }
+    
+    public TenantRegistry(File root, DayClock clock, long memoryBudgetBytes) {
+        FileHandler.ensureDirectory(root);
+        this.root = root;
+        this.clock = clock;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.queryPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "tenant-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    // Run an action against a tenant's inventory, loading it first if needed.
+    // The manager must not be used after the action returns: it may be evicted.
+    public <T> T withTenant(String tenant, Function<GroceryManager, T> action) {
+        Shard shard = acquire(tenant);
+        try {
+            return action.apply(load(shard));
+        } finally {
+            release(shard);
+        }
+    }
+    
+    // Tenants with a directory on disk, sorted
+    public List<String> getTenants() {
+        List<String> tenants = new ArrayList<>();
+        File[] dirs = root.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (TENANT_ID.matcher(dir.getName()).matches()) {
+                    tenants.add(dir.getName());
+                }
+            }
+        }
+        Collections.sort(tenants);
+        return tenants;
+    }
+    
+    // Run a query on every tenant in parallel; results by tenant, sorted by tenant id
+    public <T> Map<String, T> queryAll(Function<GroceryManager, T> query) {
+        Map<String, Future<T>> futures = new LinkedHashMap<>();
+        for (String tenant : getTenants()) {
+            futures.put(tenant, queryPool.submit(() -> withTenant(tenant, query)));
+        }
+        Map<String, T> results = new TreeMap<>();
+        try {
+            for (Map.Entry<String, Future<T>> entry : futures.entrySet()) {
+                results.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            futures.values().forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during cross-tenant query", e);
+        } catch (ExecutionException e) {
+            futures.values().forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+        return results;
+    }
+    
+    // Expired items of every tenant that has any
+    public Map<String, List<GroceryItem>> getExpiredItems() {
+        return nonEmpty(queryAll(GroceryManager::getExpiredItems));
+    }
+    
+    // Items expiring within the given days, for every tenant that has any
+    public Map<String, List<GroceryItem>> getItemsExpiringWithin(int days) {
+        return nonEmpty(queryAll(manager -> manager.getItemsExpiringWithin(days)));
+    }
+    
+    // Sum of a count over every tenant
+    public long sumAll(Function<GroceryManager, ? extends Number> count) {
+        long total = 0;
+        for (Number value : queryAll(count).values()) {
+            total += value.longValue();
+        }
+        return total;
+    }
+    
+    public synchronized int getLoadedCount() {
+        int loaded = 0;
+        for (Shard shard : shards.values()) {
+            if (shard.bytes > 0) {
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+    
+    // Estimated heap held by the loaded shards
+    public synchronized long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+    
+    public long getMemoryBudgetBytes() {
+        return memoryBudgetBytes;
+    }
+    
+    public synchronized long getLoadCount() {
+        return loads;
+    }
+    
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+    
+    // Close every loaded shard (call once no withTenant action is running)
+    public void close() {
+        List<Shard> all;
+        synchronized (this) {
+            closed = true;
+            all = new ArrayList<>(shards.values());
+        }
+        queryPool.shutdown();
+        for (Shard shard : all) {
+            synchronized (shard) {
+                if (shard.manager != null) {
+                    shard.manager.close();
+                    shard.manager = null;
+                }
+            }
+        }
+    }
+    
+    private synchronized Shard acquire(String tenant) {
+        if (closed) {
+            throw new IllegalStateException("Tenant registry is closed");
+        }
+        if (tenant == null || !TENANT_ID.matcher(tenant).matches()) {
+            throw new IllegalArgumentException("Invalid tenant id: " + tenant);
+        }
+        Shard shard = shards.computeIfAbsent(tenant, id -> new Shard(id, new File(root, id)));
+        shard.pins++;
+        return shard;
+    }
+    
+    private GroceryManager load(Shard shard) {
+        synchronized (shard) {
+            if (shard.manager == null) {
+                shard.manager = new ConcurrentGroceryManager(clock, shard.dataDir);
+                synchronized (this) {
+                    loads++;
+                    account(shard, estimate(shard.manager));
+                }
+            }
+            return shard.manager;
+        }
+    }
+    
+    // Unpin, refresh the shard's estimate (the action may have added items), then trim to the budget
+    private void release(Shard shard) {
+        long bytes;
+        synchronized (shard) {
+            bytes = shard.manager == null ? 0 : estimate(shard.manager);
+        }
+        List<Shard> victims = new ArrayList<>();
+        synchronized (this) {
+            shard.pins--;
+            if (shard.bytes > 0) {
+                account(shard, bytes);
+            }
+            long projected = estimatedBytes;
+            for (Shard candidate : shards.values()) {
+                if (projected <= memoryBudgetBytes) {
+                    break;
+                }
+                if (candidate.pins == 0 && candidate.bytes > 0) {
+                    victims.add(candidate);
+                    projected -= candidate.bytes;
+                }
+            }
+        }
+        for (Shard victim : victims) {
+            unload(victim);
+        }
+    }
+    
+    // Close an idle shard's manager (which flushes it) unless someone picked it up meanwhile.
+    // A caller that pins it afterwards waits in load() and reloads it from disk.
+    private void unload(Shard shard) {
+        synchronized (shard) {
+            synchronized (this) {
+                if (shard.pins > 0 || shard.manager == null) {
+                    return;
+                }
+                account(shard, 0);
+                evictions++;
+            }
+            shard.manager.close();
+            shard.manager = null;
+        }
+        synchronized (this) {
+            if (shard.pins == 0 && shard.bytes == 0) {
+                shards.remove(shard.tenant);
+            }
+        }
+    }
+    
+    // Replace a shard's contribution to the total; caller holds the registry lock
+    private void account(Shard shard, long bytes) {
+        estimatedBytes += bytes - shard.bytes;
+        shard.bytes = bytes;
+    }
+    
+    private static long estimate(GroceryManager manager) {
+        return BYTES_PER_SHARD + BYTES_PER_ITEM * manager.getItemCount();
+    }
+    
+    private static <T> Map<String, List<T>> nonEmpty(Map<String, List<T>> byTenant) {
+        byTenant.values().removeIf(List::isEmpty);
+        return byTenant;
+    }
+}
@@ -0,0 +1,108 @@
+package service;
+
+import util.HistoryStore;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+
+// Aggregations over a HistoryStore, computed in one streaming pass: the visitor
+// adds each decoded event into a running total per group, so memory grows with
+// the number of groups (weeks x categories), never with the number of events.
+public final class WasteReport {
+    // Units of one category used up and thrown out in one week (starting Monday)
+    public static class WeeklyWaste {
+        private final LocalDate weekStart;
+        private final String category;
+        private long consumedUnits;
+        private long expiredUnits;
+        
+        WeeklyWaste(LocalDate weekStart, String category) {
+            this.weekStart = weekStart;
+            this.category = category;
+        }
+        
+        public LocalDate getWeekStart() { return weekStart; }
+        public String getCategory() { return category; }
+        public long getConsumedUnits() { return consumedUnits; }
+        public long getExpiredUnits() { return expiredUnits; }
+        
+        // Share of the units removed that week that were thrown out expired
+        public double getWasteRate() {
+            long total = consumedUnits + expiredUnits;
+            return total == 0 ? 0 : (double) expiredUnits / total;
+        }
+    }
+    
+    // How long a category's units were actually kept versus the shelf life they were bought with
+    public static class ShelfLife {
+        private final String category;
+        private long units;
+        private long expiredUnits;
+        private long daysHeld; // unit-days from purchase to removal
+        private long daysPlanned; // unit-days from purchase to expiry
+        
+        ShelfLife(String category) {
+            this.category = category;
+        }
+        
+        public String getCategory() { return category; }
+        public long getUnits() { return units; }
+        public long getExpiredUnits() { return expiredUnits; }
+        
+        // Average days from purchase to removal, per unit
+        public double getAverageDaysHeld() {
+            return units == 0 ? 0 : (double) daysHeld / units;
+        }
+        
+        // Average days from purchase to the expiry date, per unit
+        public double getAveragePlannedDays() {
+            return units == 0 ? 0 : (double) daysPlanned / units;
+        }
+    }
+    
+    private WasteReport() {
+    }
+    
+    // Consumed and expired units per week and category removed between from and to
+    // (inclusive), oldest week first and categories alphabetically within a week
+    public static List<WeeklyWaste> weekly(HistoryStore history, LocalDate from, LocalDate to) throws IOException {
+        TreeMap<Integer, Map<String, WeeklyWaste>> weeks = new TreeMap<>();
+        history.scan((int) from.toEpochDay(), (int) to.toEpochDay(), false,
+            (day, outcome, category, quantity, purchaseDay, expiryDay) -> {
+                int weekStart = day - Math.floorMod(day + 3, 7); // epoch day 0 was a Thursday
+                WeeklyWaste row = weeks.computeIfAbsent(weekStart, week -> new HashMap<>())
+                    .computeIfAbsent(category, name -> new WeeklyWaste(LocalDate.ofEpochDay(weekStart), name));
+                if (outcome == HistoryStore.Outcome.EXPIRED) {
+                    row.expiredUnits += quantity;
+                } else {
+                    row.consumedUnits += quantity;
+                }
+            });
+        List<WeeklyWaste> rows = new ArrayList<>();
+        for (Map<String, WeeklyWaste> week : weeks.values()) {
+            List<WeeklyWaste> categories = new ArrayList<>(week.values());
+            categories.sort(Comparator.comparing(WeeklyWaste::getCategory, String.CASE_INSENSITIVE_ORDER));
+            rows.addAll(categories);
+        }
+        return rows;
+    }
+    
+    // Days held versus planned per category, for units removed between from and to
+    // (inclusive), categories alphabetically
+    public static List<ShelfLife> shelfLife(HistoryStore history, LocalDate from, LocalDate to) throws IOException {
+        Map<String, ShelfLife> categories = new HashMap<>();
+        history.scan((int) from.toEpochDay(), (int) to.toEpochDay(), true,
+            (day, outcome, category, quantity, purchaseDay, expiryDay) -> {
+                ShelfLife row = categories.computeIfAbsent(category, ShelfLife::new);
+                row.units += quantity;
+                row.daysHeld += (long) (day - purchaseDay) * quantity;
+                row.daysPlanned += (long) (expiryDay - purchaseDay) * quantity;
+                if (outcome == HistoryStore.Outcome.EXPIRED) {
+                    row.expiredUnits += quantity;
+                }
+            });
+        List<ShelfLife> rows = new ArrayList<>(categories.values());
+        rows.sort(Comparator.comparing(ShelfLife::getCategory, String.CASE_INSENSITIVE_ORDER));
+        return rows;
+    }
+}
@@ -1,27 +1,119 @@
 package ui;
 
+import model.ExpiryStatus;
 import model.GroceryItem;
+import service.BulkImporter;
+import service.ConcurrentGroceryManager;
+import service.ExpiryAlertScheduler;
 import service.GroceryManager;
+import service.ItemsFileWatcher;
+import service.WasteReport;
+import util.BackupStore;
+import util.DayClock;
+import util.FileHandler;
+import util.ItemCsv;
+import util.Metrics;
+import java.io.*;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
 public class MenuUI {
+    private static final int SEARCH_RESULT_LIMIT = 50;
+    private static final int PAGE_SIZE = 20;
+    private static final DateTimeFormatter BACKUP_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final String TABLE_RULE = "-".repeat(85);
+    private static final String TABLE_HEADER = String.format("%-10s | %-15s | %-15s | %-12s | %-12s | %s",
+        "Status", "Name", "Category", "Purchase", "Expiry", "Qty");
+    // The menu's own inventory loads on a background thread unless -Dset.load=blocking
+    private static final boolean BACKGROUND_LOAD = !"blocking".equalsIgnoreCase(System.getProperty("set.load"));
+    // Merge external edits of items.txt while the menu runs (-Dset.watch=file-wins|inventory-wins)
+    private static final ItemsFileWatcher.ConflictPolicy WATCH_POLICY = ItemsFileWatcher.ConflictPolicy.configured();
+    // Process start until the first main menu is drawn
+    private static final Metrics.Timer FIRST_MENU = Metrics.timer("ui.timeToFirstMenu");
+    
     private GroceryManager groceryManager;
     private Scanner scanner;
+    // Table output goes through one buffered writer and row buffer
+    private final PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+    private final StringBuilder row = new StringBuilder(96);
     
+    // The alert listener reads the inventory from its own thread, so the menu always
+    // uses the thread-safe manager
     public MenuUI() {
-        this.groceryManager = new GroceryManager();
+        this(BACKGROUND_LOAD ? ConcurrentGroceryManager.openInBackground(DayClock.system(), FileHandler.getDataDir())
+            : new ConcurrentGroceryManager());
+    }
+    
+    // Menu over an existing inventory (e.g. one tenant's shard); if it is still
+    // loading, the alert summary is printed when the load completes. Pushed alerts
+    // and watching items.txt need a thread-safe manager; watching starts once it is loaded.
+    public MenuUI(GroceryManager groceryManager) {
+        this.groceryManager = groceryManager;
         this.scanner = new Scanner(System.in);
+        if (groceryManager instanceof ConcurrentGroceryManager) {
+            groceryManager.addExpiryListener(new AlertPrinter());
+        }
+        if (!groceryManager.isLoaded()) {
+            groceryManager.whenLoaded().thenRun(() -> {
+                System.out.println("\n[LOADED] " + groceryManager.getItemCount() + " item(s) loaded.");
+                displayAlertSummary();
+            });
+        }
+        if (WATCH_POLICY != null && groceryManager instanceof ConcurrentGroceryManager) {
+            groceryManager.whenLoaded().thenRun(() -> watchItemsFile((ConcurrentGroceryManager) groceryManager));
+        }
+    }
+    
+    private void watchItemsFile(ConcurrentGroceryManager manager) {
+        try {
+            manager.watchItemsFile(WATCH_POLICY, result ->
+                System.out.println("\n[SYNC] items.txt was changed outside S.E.T: " + result));
+        } catch (IOException | IllegalStateException e) {
+            System.out.println("Cannot watch items.txt: " + e.getMessage());
+        }
+    }
+    
+    // Prints alerts pushed while the menu is open (e.g. across midnight)
+    private class AlertPrinter implements ExpiryAlertScheduler.Listener {
+        @Override
+        public void itemsExpiringSoon(List<GroceryItem> items, long today) {
+            System.out.println("\n[ALERT] " + items.size() + " item(s) now expiring within " +
+                             groceryManager.getAlertThresholdDays() + " days: " + names(items));
+        }
+        
+        @Override
+        public void itemsExpired(List<GroceryItem> items, long today) {
+            System.out.println("\n[EXPIRED] " + items.size() + " item(s) have just EXPIRED: " + names(items));
+        }
+        
+        private String names(List<GroceryItem> items) {
+            StringBuilder names = new StringBuilder();
+            for (int i = 0; i < items.size() && i < 5; i++) {
+                names.append(i == 0 ? "" : ", ").append(items.get(i).getName());
+            }
+            return items.size() > 5 ? names.append(", ...").toString() : names.toString();
+        }
     }
     
     public void start() {
         displayWelcomeMessage();
+        boolean first = true;
         
         while (true) {
             displayMainMenu();
+            if (first) {
+                recordTimeToFirstMenu();
+                first = false;
+            }
             int choice = getIntInput("Enter your choice: ");
             
             switch (choice) {
@@ -33,7 +125,14 @@ public class MenuUI {
                 case 6 -> showStatistics();
                 case 7 -> manageSettings();
                 case 8 -> createBackup();
+                case 9 -> updateQuantity();
+                case 10 -> importExport();
+                case 11 -> consumeItem();
+                case 12 -> restoreBackup();
+                case 13 -> showMetrics();
+                case 14 -> showWasteReport();
                 case 0 -> {
+                    groceryManager.close();
                     System.out.println("Thank you for using S.E.T! Goodbye!");
                     return;
                 }
@@ -49,24 +148,53 @@ public class MenuUI {
         System.out.println("=".repeat(50));
         System.out.println("   SMART FOOD EXPIRY TRACKER (S.E.T)");
         System.out.println("=".repeat(50));
-        System.out.println("Today's Date: " + LocalDate.now());
+        System.out.println("Today's Date: " + LocalDate.ofEpochDay(groceryManager.getToday()));
         
-        // Auto-check for expiring items
-        List<GroceryItem> expiringSoon = groceryManager.getExpiringSoonItems();
-        List<GroceryItem> expired = groceryManager.getExpiredItems();
+        if (groceryManager.isLoaded()) {
+            displayAlertSummary();
+        } else {
+            System.out.println("Loading inventory in the background; alerts follow when it is done.");
+        }
+    }
+    
+    // Alert counts come from the running statistics, kept up to date as items load
+    private void displayAlertSummary() {
+        long expired = groceryManager.getExpiredCount();
+        long expiringSoon = groceryManager.getExpiringSoonCount();
         
-        if (!expiringSoon.isEmpty() || !expired.isEmpty()) {
+        if (expiringSoon > 0 || expired > 0) {
             System.out.println("\n*** ALERTS ***");
-            if (!expired.isEmpty()) {
-                System.out.println("[EXPIRED] " + expired.size() + " item(s) have EXPIRED!");
+            if (expired > 0) {
+                System.out.println("[EXPIRED] " + expired + " item(s) have EXPIRED!");
             }
-            if (!expiringSoon.isEmpty()) {
-                System.out.println("[ALERT] " + expiringSoon.size() + " item(s) expiring within " + 
+            if (expiringSoon > 0) {
+                System.out.println("[ALERT] " + expiringSoon + " item(s) expiring within " + 
                                  groceryManager.getAlertThresholdDays() + " days!");
             }
         }
     }
     
+    private void recordTimeToFirstMenu() {
+        ProcessHandle.current().info().startInstant()
+            .ifPresent(started -> FIRST_MENU.record(Duration.between(started, Instant.now()).toNanos()));
+    }
+    
+    // Loading progress, while the inventory is still loading
+    private void displayLoadProgress() {
+        if (!groceryManager.isLoaded()) {
+            System.out.printf("(Loading inventory: %.0f%%, %d item(s) so far; results are partial)%n",
+                groceryManager.getLoadProgress() * 100, groceryManager.getItemCount());
+        }
+    }
+    
+    // Changes wait for the load so they apply to the whole inventory
+    private void waitForLoad() {
+        if (!groceryManager.isLoaded()) {
+            System.out.println("Waiting for the inventory to finish loading...");
+            groceryManager.awaitLoaded();
+        }
+    }
+    
     private void displayMainMenu() {
         System.out.println("\n" + "=".repeat(40));
         System.out.println("           MAIN MENU");
@@ -79,12 +207,20 @@ public class MenuUI {
         System.out.println("6. Statistics");
         System.out.println("7. Settings");
         System.out.println("8. Create Backup");
+        System.out.println("9. Update Quantity");
+        System.out.println("10. Import / Export CSV");
+        System.out.println("11. Use Item (oldest expiry first)");
+        System.out.println("12. Restore Backup");
+        System.out.println("13. Metrics");
+        System.out.println("14. Waste Report");
         System.out.println("0. Exit");
         System.out.println("-".repeat(40));
+        displayLoadProgress();
     }
     
     private void addItem() {
         System.out.println("\n--- Add New Grocery Item ---");
+        waitForLoad();
 
         String name = getStringInput("Item Name: ");
         
@@ -191,37 +327,37 @@ public class MenuUI {
         System.out.println("3. Sort by Name");
         
         int choice = getIntInput("Choose sorting option: ");
-        List<GroceryItem> items;
+        Iterator<GroceryItem> items;
         
         switch (choice) {
-            case 1 -> items = groceryManager.sortByExpiryDate();
-            case 2 -> items = groceryManager.sortByCategory();
-            case 3 -> items = groceryManager.sortByName();
+            case 1 -> items = groceryManager.iterateByExpiryDate();
+            case 2 -> items = groceryManager.sortByCategory().iterator();
+            case 3 -> items = groceryManager.sortByName().iterator();
             default -> {
                 System.out.println("Invalid choice, defaulting to expiry date sort.");
-                items = groceryManager.sortByExpiryDate();
+                items = groceryManager.iterateByExpiryDate();
             }
         }
         
-        displayItems(items, "All Grocery Items");
+        displayItems(items, groceryManager.getItemCount(), "All Grocery Items");
     }
     
     private void viewExpiringSoon() {
         System.out.println("\n--- Expiry Alerts ---");
         
-        List<GroceryItem> expired = groceryManager.getExpiredItems();
-        List<GroceryItem> expiringSoon = groceryManager.getExpiringSoonItems();
+        long expiredCount = groceryManager.getExpiredCount();
+        long expiringSoonCount = groceryManager.getExpiringSoonCount();
         
-        if (!expired.isEmpty()) {
-            displayItems(expired, "EXPIRED ITEMS");
+        if (expiredCount > 0) {
+            displayItems(groceryManager.iterateExpired(), expiredCount, "EXPIRED ITEMS");
         }
         
-        if (!expiringSoon.isEmpty()) {
-            displayItems(expiringSoon, 
+        if (expiringSoonCount > 0) {
+            displayItems(groceryManager.iterateExpiringSoon(), expiringSoonCount,
                 "ITEMS EXPIRING WITHIN " + groceryManager.getAlertThresholdDays() + " DAYS");
         }
         
-        if (expired.isEmpty() && expiringSoon.isEmpty()) {
+        if (expiredCount == 0 && expiringSoonCount == 0) {
             System.out.println("No items expiring soon!");
         }
     }
@@ -237,7 +373,10 @@ public class MenuUI {
         switch (choice) {
             case 1 -> {
                 String name = getStringInput("Enter item name to search: ");
-                results = groceryManager.searchByName(name);
+                results = groceryManager.searchByName(name, SEARCH_RESULT_LIMIT);
+                if (results.size() == SEARCH_RESULT_LIMIT) {
+                    System.out.println("Showing the " + SEARCH_RESULT_LIMIT + " best matches.");
+                }
             }
             case 2 -> {
                 // Show available categories
@@ -266,6 +405,7 @@ public class MenuUI {
     }
     private void deleteItem() {
         System.out.println("\n--- Delete Item ---");
+        waitForLoad();
         String name = getStringInput("Enter item name to delete: ");
         
         if (groceryManager.deleteItem(name)) {
@@ -275,11 +415,53 @@ public class MenuUI {
         }
     }
     
+    private void updateQuantity() {
+        System.out.println("\n--- Update Quantity ---");
+        waitForLoad();
+        String name = getStringInput("Enter item name: ");
+        int quantity = getIntInput("New quantity: ");
+        
+        if (quantity < 0) {
+            System.out.println("Quantity cannot be negative!");
+        } else if (groceryManager.updateQuantity(name, quantity)) {
+            System.out.println("Quantity updated successfully!");
+        } else {
+            System.out.println("Item not found!");
+        }
+    }
+    
+    private void consumeItem() {
+        System.out.println("\n--- Use Item ---");
+        waitForLoad();
+        String name = getStringInput("Enter item name: ");
+        List<GroceryItem> lots = groceryManager.getLots(name);
+        if (lots.isEmpty()) {
+            System.out.println("Item not found!");
+            return;
+        }
+        System.out.println("On hand: " + groceryManager.getQuantityOnHand(name) + " in " + lots.size() +
+                         " lot(s), next expiring " + lots.get(0).getExpiryDate());
+        int quantity = getIntInput("Quantity to use: ");
+        
+        if (quantity <= 0) {
+            System.out.println("Quantity must be positive!");
+            return;
+        }
+        int used = groceryManager.consume(name, quantity);
+        if (used < quantity) {
+            System.out.println("Only " + used + " available; all of it was used.");
+        } else {
+            System.out.println("Used " + used + ". Remaining: " + groceryManager.getQuantityOnHand(name));
+        }
+    }
+    
     private void showStatistics() {
         System.out.println("\n--- Statistics ---");
+        displayLoadProgress();
         Map<String, Object> stats = groceryManager.getStatistics();
         
         System.out.println("Total Items: " + stats.get("totalItems"));
+        System.out.println("Total Quantity: " + stats.get("totalQuantity"));
         System.out.println("Expired Items: " + stats.get("expiredItems"));
         System.out.println("Expiring Soon: " + stats.get("expiringSoon"));
         
@@ -306,9 +488,145 @@ public class MenuUI {
     }
     
     private void createBackup() {
-        groceryManager.createBackup();
+        waitForLoad();
+        BackupStore.Version version = groceryManager.createBackup();
+        if (version == null) {
+            System.out.println("Backup failed!");
+            return;
+        }
         System.out.println("Backup created successfully!");
-        System.out.println("Backup saved as: data/items_backup.txt");
+        System.out.printf("Backup %s: %d item(s), %d of %d chunk(s) new (%d bytes written)%n",
+            formatBackupTime(version), version.getItemCount(), version.getNewChunkCount(),
+            version.getChunkCount(), version.getNewBytes());
+    }
+    
+    private void restoreBackup() {
+        System.out.println("\n--- Restore Backup ---");
+        waitForLoad();
+        try {
+            List<BackupStore.Version> versions = groceryManager.getBackups();
+            if (versions.isEmpty()) {
+                System.out.println("No backups yet.");
+                return;
+            }
+            for (BackupStore.Version version : versions.subList(Math.max(0, versions.size() - 10), versions.size())) {
+                System.out.println("  " + formatBackupTime(version) + "  " + version.getItemCount() + " item(s)");
+            }
+            String input = getStringInput("Restore as of (YYYY-MM-DD HH:MM, Enter for latest): ");
+            Instant pointInTime;
+            try {
+                pointInTime = input.isEmpty() ? Instant.now()
+                    : LocalDateTime.parse(input, BACKUP_TIME).atZone(ZoneId.systemDefault()).toInstant().plusSeconds(59);
+            } catch (DateTimeParseException e) {
+                System.out.println("Invalid date/time format!");
+                return;
+            }
+            if (!getStringInput("This replaces the current inventory. Continue? (y/n): ").equalsIgnoreCase("y")) {
+                return;
+            }
+            BackupStore.Version restored = groceryManager.restoreBackup(pointInTime);
+            if (restored == null) {
+                System.out.println("No backup at or before that time.");
+            } else {
+                System.out.println("Restored " + restored.getItemCount() + " item(s) from backup " + formatBackupTime(restored));
+            }
+        } catch (IOException e) {
+            System.out.println("Error restoring backup: " + e.getMessage());
+        }
+    }
+    
+    // Operation latencies and I/O counters since start (or the last reset)
+    private void showMetrics() {
+        System.out.println("\n--- Metrics ---");
+        System.out.print(Metrics.dump());
+        if (!Metrics.isEnabled()) {
+            return;
+        }
+        String choice = getStringInput("\n[r] reset, [p] " + (Metrics.isRecording() ? "pause" : "resume")
+            + " recording, Enter to go back: ");
+        if (choice.equalsIgnoreCase("r")) {
+            Metrics.reset();
+            System.out.println("Metrics reset.");
+        } else if (choice.equalsIgnoreCase("p")) {
+            Metrics.setRecording(!Metrics.isRecording());
+            System.out.println("Recording " + (Metrics.isRecording() ? "resumed." : "paused."));
+        }
+    }
+    
+    // Units used and thrown out per week and category, and shelf life kept versus planned
+    private void showWasteReport() {
+        System.out.println("\n--- Waste Report ---");
+        String input = getStringInput("Weeks to cover (Enter for 8): ");
+        int weeks;
+        try {
+            weeks = input.isEmpty() ? 8 : Integer.parseInt(input);
+        } catch (NumberFormatException e) {
+            weeks = 0;
+        }
+        if (weeks <= 0) {
+            System.out.println("Please enter a positive number of weeks.");
+            return;
+        }
+        LocalDate to = LocalDate.ofEpochDay(groceryManager.getToday());
+        LocalDate from = to.minusWeeks(weeks).plusDays(1);
+        try {
+            List<WasteReport.WeeklyWaste> rows = groceryManager.getWasteByWeek(from, to);
+            if (rows.isEmpty()) {
+                System.out.println("Nothing used or thrown out since " + from + ".");
+                return;
+            }
+            System.out.printf("%-12s %-22s %8s %8s %7s%n", "Week of", "Category", "Used", "Expired", "Waste");
+            for (WasteReport.WeeklyWaste row : rows) {
+                System.out.printf("%-12s %-22s %8d %8d %6.0f%%%n", row.getWeekStart(), row.getCategory(),
+                    row.getConsumedUnits(), row.getExpiredUnits(), row.getWasteRate() * 100);
+            }
+            System.out.printf("%n%-22s %8s %8s %12s %12s%n", "Category", "Units", "Expired", "Days kept", "Days planned");
+            for (WasteReport.ShelfLife row : groceryManager.getShelfLife(from, to)) {
+                System.out.printf("%-22s %8d %8d %12.1f %12.1f%n", row.getCategory(), row.getUnits(),
+                    row.getExpiredUnits(), row.getAverageDaysHeld(), row.getAveragePlannedDays());
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading history: " + e.getMessage());
+        }
+    }
+    
+    private static String formatBackupTime(BackupStore.Version version) {
+        return BACKUP_TIME.format(version.getCreated().atZone(ZoneId.systemDefault()));
+    }
+    
+    private void importExport() {
+        System.out.println("\n--- Import / Export CSV ---");
+        waitForLoad();
+        System.out.println("1. Import items from CSV");
+        System.out.println("2. Export items to CSV");
+        int choice = getIntInput("Enter choice: ");
+        
+        switch (choice) {
+            case 1 -> {
+                File file = new File(getStringInput("File to import: "));
+                try {
+                    BulkImporter.ImportResult result = BulkImporter.importCsv(file, groceryManager);
+                    System.out.printf("Imported %d item(s) in %d ms (%.0f items/s)%n",
+                        result.getImported(), result.getElapsedMillis(), result.getItemsPerSecond());
+                    if (result.getRejected() > 0) {
+                        System.out.println("Rejected " + result.getRejected() + " row(s):");
+                        result.getErrors().forEach(error -> System.out.println("  " + error));
+                    }
+                } catch (IOException e) {
+                    System.out.println("Error importing items: " + e.getMessage());
+                }
+            }
+            case 2 -> {
+                File file = new File(getStringInput("File to export to: "));
+                try {
+                    int count = BulkImporter.exportCsv(groceryManager, file);
+                    System.out.println("Exported " + count + " item(s) to " + file.getPath());
+                } catch (IOException e) {
+                    System.out.println("Error exporting items: " + e.getMessage());
+                }
+            }
+            default -> System.out.println("Invalid choice!");
+        }
     }
     
     // Utility methods for input handling
@@ -340,35 +658,82 @@ public class MenuUI {
     }
     
     private void displayItems(List<GroceryItem> items, String title) {
-        if (items.isEmpty()) {
+        displayItems(items.iterator(), items.size(), title);
+    }
+    
+    // Render items a page at a time; rows are only produced for pages actually shown
+    private void displayItems(Iterator<GroceryItem> items, long total, String title) {
+        if (!items.hasNext()) {
             System.out.println("No items found.");
             return;
         }
         
-        System.out.println("\n" + title);
-        System.out.println("-".repeat(85));
-        System.out.printf("%-10s | %-15s | %-15s | %-12s | %-12s | %s%n", 
-                         "Status", "Name", "Category", "Purchase", "Expiry", "Qty");
-        System.out.println("-".repeat(85));
+        out.println("\n" + title);
+        out.flush();
+        displayLoadProgress();
+        out.println(TABLE_RULE);
+        out.println(TABLE_HEADER);
+        out.println(TABLE_RULE);
         
-        for (GroceryItem item : items) {
-            String status = "        "; // 8 spaces for alignment
-            if (item.isExpired()) {
-                status = "EXPIRED ";
-            } else if (item.isExpiringSoon(groceryManager.getAlertThresholdDays())) {
-                status = "ALERT   ";
+        long today = groceryManager.getToday();
+        int thresholdDays = groceryManager.getAlertThresholdDays();
+        long shown = 0;
+        while (items.hasNext()) {
+            for (int i = 0; i < PAGE_SIZE && items.hasNext(); i++) {
+                GroceryItem item = items.next();
+                formatRow(item, ExpiryStatus.of(item, today, thresholdDays));
+                out.append(row).println();
+                shown++;
             }
-            
-            System.out.printf("%-10s | %-15s | %-15s | %-12s | %-12s | %3d%n",
-                status,
-                item.getName().length() > 15 ? item.getName().substring(0, 12) + "..." : item.getName(),
-                item.getCategory().length() > 15 ? item.getCategory().substring(0, 12) + "..." : item.getCategory(),
-                item.getPurchaseDate(),
-                item.getExpiryDate(),
-                item.getQuantity()
-            );
-        }
-        System.out.println("-".repeat(85));
-        System.out.println("Total: " + items.size() + " items");
+            if (items.hasNext()) {
+                out.print("-- " + shown + " of " + total + " shown. Enter for more, q to stop: ");
+                out.flush();
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    break;
+                }
+            }
+        }
+        out.println(TABLE_RULE);
+        out.println("Total: " + total + " items");
+        out.flush();
+    }
+    
+    // Fill the reusable row buffer; same layout as TABLE_HEADER
+    private void formatRow(GroceryItem item, ExpiryStatus status) {
+        row.setLength(0);
+        pad(status.getLabel(), 10);
+        row.append(" | ");
+        pad(truncate(item.getName()), 15);
+        row.append(" | ");
+        pad(truncate(item.getCategory()), 15);
+        row.append(" | ");
+        appendDate(item.getPurchaseDay());
+        row.append("   | ");
+        appendDate(item.getExpiryDay());
+        row.append("   | ");
+        String quantity = Integer.toString(item.getQuantity());
+        for (int i = quantity.length(); i < 3; i++) {
+            row.append(' ');
+        }
+        row.append(quantity);
+    }
+    
+    private void pad(String value, int width) {
+        row.append(value);
+        for (int i = value.length(); i < width; i++) {
+            row.append(' ');
+        }
+    }
+    
+    private void appendDate(int epochDay) {
+        try {
+            ItemCsv.writeDate(epochDay, row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder does not throw
+        }
+    }
+    
+    private static String truncate(String value) {
+        return value.length() > 15 ? value.substring(0, 12) + "..." : value;
     }
 }
@@ -0,0 +1,295 @@
+package util;
+
+import model.GroceryItem;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Versioned, deduplicated backups of an inventory. A backup is the item CSV cut
+// into chunks at content-defined record boundaries (a line ends a chunk when its
+// hash hits a mask), so inserting, deleting or editing items only changes the
+// chunks around them. Chunks are stored once, compressed, under their SHA-256:
+//
+//   backups/chunks/ab/abcdef...     deflated chunk bytes
+//   backups/versions/<millis>.manifest
+//       SET-BACKUP 1 / items <n> / new <chunks> <bytes> / then one "<hash> <length>" per chunk
+//
+// A backup writes only the chunks not already in the store, then its manifest;
+// both go through a temp file and an atomic rename, so a crash leaves at most
+// unreferenced chunks behind. Restore picks the latest version at or before a
+// point in time and verifies every chunk against its hash.
+public class BackupStore {
+    private static final String HEADER = "SET-BACKUP 1";
+    private static final String MANIFEST_SUFFIX = ".manifest";
+    // A chunk ends after a record whose mixed hash has these bits clear (~128 records)
+    private static final int BOUNDARY_MASK = 127;
+    private static final int MIN_CHUNK_BYTES = 1024;
+    private static final int MAX_CHUNK_BYTES = 64 * 1024;
+    private static final Metrics.Counter BYTES_READ = Metrics.counter("io.bytesRead");
+    private static final Metrics.Counter BYTES_WRITTEN = Metrics.counter("io.bytesWritten");
+    
+    private final File chunkDir;
+    private final File versionDir;
+    
+    // One backup; id is its creation time in epoch millis
+    public static class Version {
+        private final long id;
+        private final int itemCount;
+        private final List<String> chunks;
+        private final int newChunks;
+        private final long newBytes;
+        
+        private Version(long id, int itemCount, List<String> chunks, int newChunks, long newBytes) {
+            this.id = id;
+            this.itemCount = itemCount;
+            this.chunks = chunks;
+            this.newChunks = newChunks;
+            this.newBytes = newBytes;
+        }
+        
+        public long getId() { return id; }
+        public Instant getCreated() { return Instant.ofEpochMilli(id); }
+        public int getItemCount() { return itemCount; }
+        public int getChunkCount() { return chunks.size(); }
+        // Chunks (and their uncompressed bytes) this backup had to write
+        public int getNewChunkCount() { return newChunks; }
+        public long getNewBytes() { return newBytes; }
+        
+        @Override
+        public String toString() {
+            return getCreated() + " (" + itemCount + " items, " + newChunks + "/" + chunks.size() + " chunks new)";
+        }
+    }
+    
+    public BackupStore(File dir) {
+        this.chunkDir = new File(dir, "chunks");
+        this.versionDir = new File(dir, "versions");
+    }
+    
+    // Write a new version of the items; returns it with the number of chunks actually written
+    public synchronized Version backup(Collection<GroceryItem> items) throws IOException {
+        FileHandler.ensureDirectory(chunkDir);
+        FileHandler.ensureDirectory(versionDir);
+        List<String> chunks = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        int newChunks = 0;
+        long newBytes = 0;
+        
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(MAX_CHUNK_BYTES);
+        StringBuilder line = new StringBuilder(64);
+        Iterator<GroceryItem> iterator = items.iterator();
+        while (iterator.hasNext()) {
+            line.setLength(0);
+            ItemCsv.write(iterator.next(), line);
+            line.append('\n');
+            String text = line.toString();
+            byte[] record = text.getBytes(StandardCharsets.UTF_8);
+            chunk.write(record, 0, record.length);
+            if (!iterator.hasNext() || isBoundary(text, chunk.size())) {
+                byte[] bytes = chunk.toByteArray();
+                String hash = sha256(bytes);
+                if (storeChunk(hash, bytes)) {
+                    newChunks++;
+                    newBytes += bytes.length;
+                }
+                chunks.add(hash);
+                lengths.add(bytes.length);
+                chunk.reset();
+            }
+        }
+        
+        long id = System.currentTimeMillis();
+        while (manifestFile(id).exists()) {
+            id++;
+        }
+        File manifest = manifestFile(id);
+        File temp = new File(manifest.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            writer.write(HEADER + "\nitems " + items.size() + "\nnew " + newChunks + " " + newBytes + "\n");
+            for (int i = 0; i < chunks.size(); i++) {
+                writer.write(chunks.get(i) + " " + lengths.get(i) + "\n");
+            }
+        }
+        FileHandler.replaceAtomically(temp, manifest);
+        return new Version(id, items.size(), chunks, newChunks, newBytes);
+    }
+    
+    // All versions, oldest first
+    public synchronized List<Version> listVersions() throws IOException {
+        List<Version> versions = new ArrayList<>();
+        File[] manifests = versionDir.listFiles((dir, name) -> name.endsWith(MANIFEST_SUFFIX));
+        if (manifests == null) {
+            return versions;
+        }
+        for (File manifest : manifests) {
+            String name = manifest.getName();
+            try {
+                versions.add(readManifest(Long.parseLong(name.substring(0, name.length() - MANIFEST_SUFFIX.length()))));
+            } catch (NumberFormatException e) {
+                // Not one of ours
+            }
+        }
+        versions.sort(Comparator.comparingLong(Version::getId));
+        return versions;
+    }
+    
+    // Latest version created at or before the given time, or null if there is none
+    public Version findVersion(Instant pointInTime) throws IOException {
+        Version found = null;
+        for (Version version : listVersions()) {
+            if (version.getId() <= pointInTime.toEpochMilli()) {
+                found = version;
+            }
+        }
+        return found;
+    }
+    
+    // Items of a version, in the order they were backed up
+    public synchronized List<GroceryItem> restore(long versionId) throws IOException {
+        Version version = readManifest(versionId);
+        List<GroceryItem> items = new ArrayList<>(version.getItemCount());
+        int lineNumber = 1;
+        for (String hash : version.chunks) {
+            byte[] bytes = readChunk(hash);
+            try (ItemCsvReader reader = new ItemCsvReader(
+                    new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8), lineNumber)) {
+                GroceryItem item;
+                while ((item = reader.next()) != null) {
+                    items.add(item);
+                    lineNumber++;
+                }
+                if (reader.getErrorCount() > 0) {
+                    throw new IOException("Corrupt backup " + versionId + ": " + reader.getErrors().get(0));
+                }
+            }
+        }
+        if (items.size() != version.getItemCount()) {
+            throw new IOException("Backup " + versionId + " has " + items.size()
+                + " items, manifest says " + version.getItemCount());
+        }
+        return items;
+    }
+    
+    // Delete all but the newest versions and any chunks they no longer share; returns chunks deleted
+    public synchronized int prune(int keepLatest) throws IOException {
+        List<Version> versions = listVersions();
+        Set<String> live = new HashSet<>();
+        for (int i = 0; i < versions.size(); i++) {
+            if (i < versions.size() - keepLatest) {
+                manifestFile(versions.get(i).getId()).delete();
+            } else {
+                live.addAll(versions.get(i).chunks);
+            }
+        }
+        int deleted = 0;
+        File[] shards = chunkDir.listFiles(File::isDirectory);
+        if (shards == null) {
+            return 0;
+        }
+        for (File shard : shards) {
+            File[] files = shard.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (!live.contains(file.getName()) && file.delete()) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+    
+    // Content-defined cut: depends only on the record just written, so boundaries
+    // stay put when records elsewhere change
+    private static boolean isBoundary(String record, int chunkBytes) {
+        if (chunkBytes >= MAX_CHUNK_BYTES) {
+            return true;
+        }
+        int hash = record.hashCode() * 0x9E3779B1;
+        return chunkBytes >= MIN_CHUNK_BYTES && ((hash >>> 16) & BOUNDARY_MASK) == 0;
+    }
+    
+    // Write a chunk unless the store already has it; true if it was written
+    private boolean storeChunk(String hash, byte[] bytes) throws IOException {
+        File file = chunkFile(hash);
+        if (file.exists()) {
+            return false;
+        }
+        FileHandler.ensureDirectory(file.getParentFile());
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new DeflaterOutputStream(new FileOutputStream(temp))) {
+            out.write(bytes);
+        }
+        BYTES_WRITTEN.add(temp.length());
+        FileHandler.replaceAtomically(temp, file);
+        return true;
+    }
+    
+    private byte[] readChunk(String hash) throws IOException {
+        File file = chunkFile(hash);
+        if (!file.exists()) {
+            throw new IOException("Missing backup chunk " + hash);
+        }
+        byte[] bytes;
+        try (InputStream in = new InflaterInputStream(new FileInputStream(file))) {
+            bytes = in.readAllBytes();
+        }
+        BYTES_READ.add(file.length());
+        if (!sha256(bytes).equals(hash)) {
+            throw new IOException("Backup chunk " + hash + " does not match its hash");
+        }
+        return bytes;
+    }
+    
+    private Version readManifest(long id) throws IOException {
+        File file = manifestFile(id);
+        if (!file.exists()) {
+            throw new IOException("No backup version " + id);
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            if (!HEADER.equals(reader.readLine())) {
+                throw new IOException("Not a backup manifest: " + file);
+            }
+            int itemCount = Integer.parseInt(reader.readLine().substring("items ".length()));
+            String[] written = reader.readLine().split(" ");
+            List<String> chunks = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    chunks.add(line.substring(0, line.indexOf(' ')));
+                }
+            }
+            return new Version(id, itemCount, chunks, Integer.parseInt(written[1]), Long.parseLong(written[2]));
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed backup manifest: " + file, e);
+        }
+    }
+    
+    private File manifestFile(long id) {
+        return new File(versionDir, id + MANIFEST_SUFFIX);
+    }
+    
+    private File chunkFile(String hash) {
+        return new File(new File(chunkDir, hash.substring(0, 2)), hash);
+    }
+    
+    private static String sha256(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e); // required on every JVM
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package util;
+
+import model.GroceryItem;
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Compact binary snapshot: a string dictionary for names and categories,
+// then one fixed-size record per item with dates stored as epoch days.
+//
+//   int magic, int version, int dictionarySize, dictionary (int length + UTF-8 bytes)...
+//   int itemCount, items (int nameId, int categoryId, int purchaseDay, int expiryDay, int quantity)...
+public class BinarySnapshot {
+    private static final int MAGIC = 0x53455442; // "SETB"
+    private static final int VERSION = 1;
+    
+    // Write items to a binary snapshot file
+    public static void write(Collection<GroceryItem> items, File file) throws IOException {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        for (GroceryItem item : items) {
+            dictionary.putIfAbsent(item.getName(), dictionary.size());
+            dictionary.putIfAbsent(item.getCategory(), dictionary.size());
+        }
+        
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dictionary.size());
+            for (String value : dictionary.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            
+            out.writeInt(items.size());
+            for (GroceryItem item : items) {
+                out.writeInt(dictionary.get(item.getName()));
+                out.writeInt(dictionary.get(item.getCategory()));
+                out.writeInt(item.getPurchaseDay());
+                out.writeInt(item.getExpiryDay());
+                out.writeInt(item.getQuantity());
+            }
+        }
+    }
+    
+    // Load a binary snapshot through a memory-mapped buffer
+    public static List<GroceryItem> read(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a binary snapshot: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            
+            String[] dictionary = new String[buffer.getInt()];
+            byte[] scratch = new byte[64];
+            for (int i = 0; i < dictionary.length; i++) {
+                int length = buffer.getInt();
+                if (scratch.length < length) {
+                    scratch = new byte[length];
+                }
+                buffer.get(scratch, 0, length);
+                dictionary[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+            
+            int count = buffer.getInt();
+            List<GroceryItem> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = dictionary[buffer.getInt()];
+                String category = dictionary[buffer.getInt()];
+                int purchaseDay = buffer.getInt();
+                int expiryDay = buffer.getInt();
+                items.add(new GroceryItem(name, category, purchaseDay, expiryDay, buffer.getInt()));
+            }
+            return items;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package util;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+// Supplies "today" as an epoch day. The day is cached and only recomputed
+// (with a time-zone lookup) once the clock passes the next local midnight,
+// so a call is normally one millisecond read and a comparison. Pass a fixed
+// or offset java.time.Clock to make date-dependent behaviour testable.
+public class DayClock {
+    private static final DayClock SYSTEM = new DayClock(Clock.systemDefaultZone());
+    
+    private final Clock clock;
+    private volatile Day current;
+    
+    // Cached day with the millisecond range it covers
+    private static class Day {
+        private final long epochDay;
+        private final long startMillis;
+        private final long endMillis;
+        
+        private Day(long epochDay, long startMillis, long endMillis) {
+            this.epochDay = epochDay;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+        }
+    }
+    
+    public DayClock(Clock clock) {
+        this.clock = clock;
+    }
+    
+    // Shared clock on the system time and default zone
+    public static DayClock system() {
+        return SYSTEM;
+    }
+    
+    // Clock that is always on the given date
+    public static DayClock fixed(LocalDate date) {
+        ZoneId zone = ZoneId.systemDefault();
+        return new DayClock(Clock.fixed(date.atStartOfDay(zone).toInstant(), zone));
+    }
+    
+    // Current epoch day
+    public long today() {
+        long now = clock.millis();
+        Day day = current;
+        if (day == null || now < day.startMillis || now >= day.endMillis) {
+            day = dayAt(now);
+            current = day;
+        }
+        return day.epochDay;
+    }
+    
+    private Day dayAt(long millis) {
+        ZoneId zone = clock.getZone();
+        LocalDate date = Instant.ofEpochMilli(millis).atZone(zone).toLocalDate();
+        long start = date.atStartOfDay(zone).toInstant().toEpochMilli();
+        long end = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        return new Day(date.toEpochDay(), start, end);
+    }
+}
@@ -1,69 +1,514 @@
 package util;
 
 import model.GroceryItem;
+import model.Product;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 
 public class FileHandler {
-    private static final String DATA_DIR = "data";
-    private static final String DATA_FILE = DATA_DIR + "/items.txt";
-    private static final String BACKUP_FILE = DATA_DIR + "/items_backup.txt";
+    // Receives items from streamItems as they are read
+    public interface BatchListener {
+        // Next items in file order; fractionDone is an estimate from 0 to 1
+        void itemsLoaded(List<GroceryItem> batch, double fractionDone);
+    }
+    
+    // Default data directory; the File-taking overloads below work on any other
+    // directory (e.g. one per tenant) with the same file names inside it
+    private static final File DATA_DIR = new File(System.getProperty("set.data.dir", "data"));
+    private static final String DATA_FILE = "items.txt";
+    private static final String BACKUP_DIR = "backups";
+    private static final String HISTORY_DIR = "history";
+    private static final String JOURNAL_FILE = "items.journal";
+    private static final String COMPACTING_FILE = "items.journal.compacting";
+    private static final String BINARY_FILE = "items.bin";
+    
+    // Storage settings (override with -Dset.storage=journal etc.)
+    private static final boolean JOURNAL_MODE = "journal".equalsIgnoreCase(System.getProperty("set.storage"));
+    private static final boolean BINARY_SNAPSHOT = "binary".equalsIgnoreCase(System.getProperty("set.snapshot"));
+    private static final Journal.FsyncPolicy FSYNC_POLICY =
+        Journal.FsyncPolicy.valueOf(System.getProperty("set.fsync", "BATCH").toUpperCase());
+    private static final long COMMIT_INTERVAL_MILLIS = Long.getLong("set.commitIntervalMillis", 50);
+    private static final int COMPACT_THRESHOLD = Integer.getInteger("set.compactThreshold", 10_000);
+    
+    // Background compaction runs one at a time; at most one pending per data directory
+    private static final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Map<File, Future<?>> pendingCompactions = new HashMap<>();
+    private static final Map<File, BackupStore> backupStores = new HashMap<>();
+    
+    private static final Metrics.Timer LOAD = Metrics.timer("file.loadItems");
+    private static final Metrics.Timer SAVE = Metrics.timer("file.saveItems");
+    private static final Metrics.Timer READ_TEXT = Metrics.timer("file.readTextFile");
+    private static final Metrics.Timer WRITE_TEXT = Metrics.timer("file.writeTextFile");
+    private static final Metrics.Timer REPLAY = Metrics.timer("file.replayJournal");
+    private static final Metrics.Timer COMPACT = Metrics.timer("file.compact");
+    private static final Metrics.Timer BACKUP = Metrics.timer("file.createBackup");
+    private static final Metrics.Counter BYTES_READ = Metrics.counter("io.bytesRead");
+    private static final Metrics.Counter BYTES_WRITTEN = Metrics.counter("io.bytesWritten");
+    private static final Metrics.Counter ERRORS = Metrics.counter("io.errors");
+    private static final Metrics.Counter BAD_RECORDS = Metrics.counter("journal.badRecords");
     
     // Ensure data directory exists
     static {
-        File dataDir = new File(DATA_DIR);
+        ensureDirectory(DATA_DIR);
+    }
+    
+    public static File getDataDir() {
+        return DATA_DIR;
+    }
+    
+    // The text snapshot other programs may edit, or null when the snapshot is binary (-Dset.snapshot=binary)
+    public static File getTextSnapshot(File dataDir) {
+        return BINARY_SNAPSHOT ? null : new File(dataDir, DATA_FILE);
+    }
+    
+    // Create a data directory (and its parents) if it does not exist yet
+    public static void ensureDirectory(File dataDir) {
         if (!dataDir.exists()) {
             dataDir.mkdirs();
         }
     }
     
     // Save items to file
-    public static void saveItems(List<GroceryItem> items) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(DATA_FILE))) {
-            for (GroceryItem item : items) {
-                writer.println(item.toFileString());
-            }
+    public static void saveItems(Collection<GroceryItem> items) {
+        saveItems(items, DATA_DIR);
+    }
+    
+    // Written to a temp file, forced and renamed over the snapshot, so a crash
+    // leaves either the old or the new snapshot, never a truncated one
+    public static void saveItems(Collection<GroceryItem> items, File dataDir) {
+        long start = Metrics.start();
+        File target = snapshotFile(dataDir);
+        File temp = new File(target.getPath() + ".tmp");
+        try {
+            writeSnapshot(items, temp);
+            replaceAtomically(temp, target);
         } catch (IOException e) {
-            System.err.println("Error saving items: " + e.getMessage());
+            reportError("Error saving items: " + e.getMessage());
         }
+        SAVE.stop(start);
     }
     
     // Load items from file
     public static List<GroceryItem> loadItems() {
+        return loadItems(DATA_DIR);
+    }
+    
+    public static List<GroceryItem> loadItems(File dataDir) {
+        long start = Metrics.start();
+        try {
+            return readItems(dataDir);
+        } finally {
+            LOAD.stop(start);
+        }
+    }
+    
+    // Load items in batches of up to batchSize as they are parsed, for callers that
+    // use the inventory before loading ends. Only a text snapshot without a journal
+    // is streamed; otherwise a replayed delete could remove an item already handed
+    // out, so the batches follow once the snapshot is read and the journal replayed.
+    public static void streamItems(File dataDir, int batchSize, BatchListener listener) {
+        long start = Metrics.start();
+        try {
+            File textFile = new File(dataDir, DATA_FILE);
+            boolean binary = BINARY_SNAPSHOT && new File(dataDir, BINARY_FILE).exists();
+            if (!binary && !hasJournal(dataDir) && textFile.exists()) {
+                streamTextFile(textFile, batchSize, listener);
+                return;
+            }
+            List<GroceryItem> items = readItems(dataDir);
+            for (int from = 0; from < items.size(); from += batchSize) {
+                int to = Math.min(from + batchSize, items.size());
+                listener.itemsLoaded(new ArrayList<>(items.subList(from, to)), (double) to / items.size());
+            }
+        } finally {
+            LOAD.stop(start);
+        }
+    }
+    
+    private static List<GroceryItem> readItems(File dataDir) {
         List<GroceryItem> items = new ArrayList<>();
-        File file = new File(DATA_FILE);
+        File binaryFile = new File(dataDir, BINARY_FILE);
+        File textFile = new File(dataDir, DATA_FILE);
+        
+        File snapshot = null;
+        if (BINARY_SNAPSHOT && binaryFile.exists()) {
+            snapshot = binaryFile;
+            try {
+                items.addAll(BinarySnapshot.read(binaryFile));
+                BYTES_READ.add(binaryFile.length());
+            } catch (IOException e) {
+                reportError("Error loading items: " + e.getMessage());
+            }
+        } else if (textFile.exists()) {
+            snapshot = textFile;
+            items.addAll(readTextFile(textFile));
+        }
         
-        if (!file.exists()) {
+        if (!hasJournal(dataDir)) {
             return items;
         }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(DATA_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (!line.trim().isEmpty()) {
-                    try {
-                        items.add(GroceryItem.fromFileString(line));
-                    } catch (Exception e) {
-                        System.err.println("Error parsing line: " + line);
-                    }
+        // Replay mutations logged since the last snapshot, finding items by name through a map
+        Set<GroceryItem> live = new LinkedHashSet<>(items);
+        Map<String, Product> byName = new HashMap<>();
+        for (GroceryItem item : live) {
+            byName.computeIfAbsent(item.getName().toLowerCase(Locale.ROOT), key -> new Product(item.getName())).addLot(item);
+        }
+        long start = Metrics.start();
+        try {
+            File compacting = new File(dataDir, COMPACTING_FILE);
+            int folded = foldedRecords(compacting, snapshot);
+            int[] position = new int[1];
+            Journal.replay(compacting, record -> {
+                if (position[0]++ >= folded) {
+                    applyRecord(live, byName, record, dataDir);
                 }
-            }
+            });
+            File journal = new File(dataDir, JOURNAL_FILE);
+            Journal.replay(journal, record -> applyRecord(live, byName, record, dataDir));
+            BYTES_READ.add(compacting.length() + journal.length());
         } catch (IOException e) {
-            System.err.println("Error loading items: " + e.getMessage());
+            reportError("Error replaying journal: " + e.getMessage());
         }
+        REPLAY.stop(start);
         
+        return new ArrayList<>(live);
+    }
+    
+    // Records at the start of a rotated log that the snapshot already holds: those
+    // up to the last FOLDED marker naming this snapshot. None if no marker matches
+    // (the compaction stopped before publishing its snapshot).
+    private static int foldedRecords(File log, File snapshot) throws IOException {
+        if (snapshot == null || !log.exists()) {
+            return 0;
+        }
+        int[] position = new int[1];
+        Map<Integer, String> markers = new LinkedHashMap<>(); // records up to and including a marker -> its stamp
+        Journal.replay(log, record -> {
+            position[0]++;
+            if (record[0].equals(Journal.FOLDED)) {
+                markers.put(position[0], record[1]);
+            }
+        });
+        if (markers.isEmpty()) {
+            return 0;
+        }
+        String stamp = stamp(snapshot);
+        int folded = 0;
+        for (Map.Entry<Integer, String> marker : markers.entrySet()) {
+            if (marker.getValue().equals(stamp)) {
+                folded = marker.getKey();
+            }
+        }
+        return folded;
+    }
+    
+    // Stamp of the active snapshot file (see compact), or null if there is none
+    public static String snapshotStamp(File dataDir) throws IOException {
+        File snapshot = snapshotFile(dataDir);
+        return snapshot.exists() ? stamp(snapshot) : null;
+    }
+    
+    // Length and CRC-32 of a snapshot file
+    private static String stamp(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return file.length() + ":" + Long.toHexString(crc.getValue());
+    }
+    
+    // Read items from a text (CSV) file
+    public static List<GroceryItem> readTextFile(File file) {
+        List<GroceryItem> items = new ArrayList<>();
+        streamTextFile(file, Integer.MAX_VALUE, (batch, fractionDone) -> items.addAll(batch));
         return items;
     }
     
-    // Create backup
-    public static void createBackup(List<GroceryItem> items) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(BACKUP_FILE))) {
+    // Progress is the share of the file's bytes consumed so far
+    private static void streamTextFile(File file, int batchSize, BatchListener listener) {
+        long start = Metrics.start();
+        try (FileInputStream in = new FileInputStream(file);
+             ItemCsvReader reader = new ItemCsvReader(new InputStreamReader(in))) {
+            double length = Math.max(file.length(), 1);
+            List<GroceryItem> batch = new ArrayList<>(Math.min(batchSize, 1 << 14));
+            GroceryItem item;
+            while ((item = reader.next()) != null) {
+                batch.add(item);
+                if (batch.size() == batchSize) {
+                    listener.itemsLoaded(batch, Math.min(in.getChannel().position() / length, 1));
+                    batch = new ArrayList<>(Math.min(batchSize, 1 << 14));
+                }
+            }
+            if (!batch.isEmpty()) {
+                listener.itemsLoaded(batch, 1);
+            }
+            if (reader.getErrorCount() > 0) {
+                System.err.println("Skipped " + reader.getErrorCount() + " malformed line(s) in "
+                    + file + ", first: " + reader.getErrors().get(0));
+            }
+            BYTES_READ.add(file.length());
+        } catch (IOException e) {
+            reportError("Error loading items: " + e.getMessage());
+        }
+        READ_TEXT.stop(start);
+    }
+    
+    // Write items to a text (CSV) file
+    public static void writeTextFile(Collection<GroceryItem> items, File file) throws IOException {
+        long start = Metrics.start();
+        try (Writer writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+            // Format each record into one reused builder, then hand it over in a single write
+            StringBuilder line = new StringBuilder(64);
             for (GroceryItem item : items) {
-                writer.println(item.toFileString());
+                line.setLength(0);
+                ItemCsv.write(item, line);
+                line.append(System.lineSeparator());
+                writer.append(line);
             }
+        }
+        BYTES_WRITTEN.add(file.length());
+        WRITE_TEXT.stop(start);
+    }
+    
+    // Active snapshot file for the configured format (-Dset.snapshot=binary)
+    private static File snapshotFile(File dataDir) {
+        return new File(dataDir, BINARY_SNAPSHOT ? BINARY_FILE : DATA_FILE);
+    }
+    
+    private static void writeSnapshot(Collection<GroceryItem> items, File file) throws IOException {
+        if (BINARY_SNAPSHOT) {
+            BinarySnapshot.write(items, file);
+            BYTES_WRITTEN.add(file.length());
+        } else {
+            writeTextFile(items, file);
+        }
+    }
+    
+    // Print an I/O failure and count it (io.errors)
+    private static void reportError(String message) {
+        ERRORS.increment();
+        System.err.println(message);
+    }
+    
+    // Force a finished temp file to disk and rename it over the target, then force
+    // the directory entry (best effort; not every platform can open a directory)
+    static void replaceAtomically(File temp, File target) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel directory = FileChannel.open(target.getAbsoluteFile().getParentFile().toPath(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // The rename itself is still atomic
+        }
+    }
+    
+    private static void applyRecord(Set<GroceryItem> live, Map<String, Product> byName,
+                                    String[] record, File dataDir) {
+        try {
+            switch (record[0]) {
+                case Journal.ADD -> {
+                    GroceryItem item = GroceryItem.fromFileString(record[1]);
+                    live.add(item);
+                    byName.computeIfAbsent(item.getName().toLowerCase(Locale.ROOT), key -> new Product(item.getName())).addLot(item);
+                }
+                case Journal.DELETE -> {
+                    Product removed = byName.remove(record[1].toLowerCase(Locale.ROOT));
+                    if (removed != null) {
+                        removed.getLots().forEach(live::remove);
+                    }
+                }
+                case Journal.QUANTITY -> {
+                    int comma = record[1].indexOf(',');
+                    int quantity = Integer.parseInt(record[1].substring(0, comma));
+                    String name = record[1].substring(comma + 1);
+                    Product product = byName.get(name.toLowerCase(Locale.ROOT));
+                    if (product != null) {
+                        product.getLots().forEach(item -> item.setQuantity(quantity));
+                    }
+                }
+                case Journal.CONSUME -> {
+                    // Same FEFO draw as GroceryManager.consume, against the replayed lots
+                    int comma = record[1].indexOf(',');
+                    int quantity = Integer.parseInt(record[1].substring(0, comma));
+                    String key = record[1].substring(comma + 1).toLowerCase(Locale.ROOT);
+                    Product product = byName.get(key);
+                    if (product != null) {
+                        List<GroceryItem> emptied = new ArrayList<>();
+                        product.consume(quantity, emptied);
+                        emptied.forEach(live::remove);
+                        if (product.isEmpty()) {
+                            byName.remove(key);
+                        }
+                    }
+                }
+                case Journal.FOLDED -> {
+                    // A compaction marker whose snapshot was never published (see foldedRecords)
+                }
+                case Journal.RESTORE -> {
+                    // The whole inventory was replaced by a backup version
+                    List<GroceryItem> restored = backupStore(dataDir).restore(Long.parseLong(record[1]));
+                    live.clear();
+                    byName.clear();
+                    for (GroceryItem item : restored) {
+                        live.add(item);
+                        byName.computeIfAbsent(item.getName().toLowerCase(Locale.ROOT), key -> new Product(item.getName())).addLot(item);
+                    }
+                }
+                default -> {
+                    BAD_RECORDS.increment();
+                    System.err.println("Unknown journal record: " + record[0]);
+                }
+            }
+        } catch (Exception e) {
+            BAD_RECORDS.increment();
+            System.err.println("Error parsing journal record: " + record[1]);
+        }
+    }
+    
+    // Whether mutations are appended to the journal instead of rewriting the snapshot
+    public static boolean isJournalMode() {
+        return JOURNAL_MODE;
+    }
+    
+    // Open the write-ahead log for appending
+    public static Journal openJournal() {
+        return openJournal(DATA_DIR);
+    }
+    
+    public static Journal openJournal(File dataDir) {
+        try {
+            return new Journal(new File(dataDir, JOURNAL_FILE), FSYNC_POLICY, COMMIT_INTERVAL_MILLIS);
+        } catch (IOException e) {
+            reportError("Error opening journal: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    // Whether journal files are left over from a journaled run
+    public static boolean hasJournal() {
+        return hasJournal(DATA_DIR);
+    }
+    
+    public static boolean hasJournal(File dataDir) {
+        return new File(dataDir, JOURNAL_FILE).exists() || new File(dataDir, COMPACTING_FILE).exists();
+    }
+    
+    // Drop journal files once their contents are in the snapshot
+    public static void deleteJournal() {
+        deleteJournal(DATA_DIR);
+    }
+    
+    public static void deleteJournal(File dataDir) {
+        new File(dataDir, JOURNAL_FILE).delete();
+        new File(dataDir, COMPACTING_FILE).delete();
+    }
+    
+    // Whether the journal has grown enough to fold back into the snapshot
+    public static synchronized boolean needsCompaction(Journal journal, File dataDir) {
+        Future<?> pending = pendingCompactions.get(dataDir);
+        return journal.getRecordCount() >= COMPACT_THRESHOLD && (pending == null || pending.isDone());
+    }
+    
+    // Rotate the journal and write the snapshot in the background.
+    // The caller passes the items that match the rotated log; until the snapshot
+    // is moved into place, loadItems replays the rotated log. Before the move, the
+    // new snapshot's stamp goes into the rotated log as a FOLDED record, so a crash
+    // between the move and the log's deletion skips the log instead of applying
+    // its records a second time.
+    public static synchronized void compact(Journal journal, List<GroceryItem> items, File dataDir) {
+        Future<?> pending = pendingCompactions.get(dataDir);
+        if (pending != null && !pending.isDone()) {
+            return;
+        }
+        File compacting = new File(dataDir, COMPACTING_FILE);
+        try {
+            journal.rotate(compacting);
+        } catch (IOException e) {
+            reportError("Error rotating journal: " + e.getMessage());
+            return;
+        }
+        // Lots change in place (consume lowers a partly used lot's quantity), so copy
+        // them as of the rotation: later records are replayed from the new journal
+        List<GroceryItem> snapshot = new ArrayList<>(items.size());
+        for (GroceryItem item : items) {
+            snapshot.add(new GroceryItem(item.getName(), item.getCategory(),
+                item.getPurchaseDay(), item.getExpiryDay(), item.getQuantity()));
+        }
+        pendingCompactions.put(dataDir, compactor.submit(() -> {
+            long start = Metrics.start();
+            File target = snapshotFile(dataDir);
+            File temp = new File(target.getPath() + ".tmp");
+            try {
+                writeSnapshot(snapshot, temp);
+                Journal.appendRecord(compacting, Journal.FOLDED, stamp(temp));
+                replaceAtomically(temp, target);
+                compacting.delete();
+            } catch (IOException e) {
+                reportError("Error compacting journal: " + e.getMessage());
+            }
+            COMPACT.stop(start);
+        }));
+    }
+    
+    // Wait for an in-flight compaction of a data directory (used on shutdown)
+    public static void awaitCompaction(File dataDir) {
+        Future<?> pending;
+        synchronized (FileHandler.class) {
+            pending = pendingCompactions.remove(dataDir);
+        }
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        } catch (Exception e) {
+            reportError("Error waiting for compaction: " + e.getMessage());
+        }
+    }
+    
+    // Create an incremental backup version; null if it failed
+    public static BackupStore.Version createBackup(Collection<GroceryItem> items) {
+        return createBackup(items, DATA_DIR);
+    }
+    
+    public static BackupStore.Version createBackup(Collection<GroceryItem> items, File dataDir) {
+        long start = Metrics.start();
+        try {
+            return backupStore(dataDir).backup(items);
         } catch (IOException e) {
-            System.err.println("Error creating backup: " + e.getMessage());
+            reportError("Error creating backup: " + e.getMessage());
+            return null;
+        } finally {
+            BACKUP.stop(start);
         }
     }
+    
+    // Consumption and waste history of a data directory (in <dataDir>/history); one per manager
+    public static HistoryStore openHistory(File dataDir) {
+        return new HistoryStore(new File(dataDir, HISTORY_DIR));
+    }
+    
+    // Versioned backups of a data directory (in <dataDir>/backups); one store per directory
+    public static synchronized BackupStore backupStore(File dataDir) {
+        return backupStores.computeIfAbsent(dataDir, dir -> new BackupStore(new File(dir, BACKUP_DIR)));
+    }
 }
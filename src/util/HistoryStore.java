@@ -0,0 +1,499 @@
+package util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Every removal of stock from an inventory (units consumed, or lots thrown out
+// expired), kept for years of waste analytics without holding events on the heap:
+//
+//   history/2026-10.seg   append-only segment per month of removal dates
+//       blocks: int minDay, int maxDay, int count, int rawLength, int datesOffset,
+//               int compressedLength, int crc32, then the deflated block
+//
+// A block holds up to 512 events as columns of varints: a category dictionary,
+// then day deltas, (category << 1 | outcome), quantity, and last the age at
+// removal and planned shelf life (both in days from purchase). Events are buffered
+// and written a block at a time, when a block fills, the month changes, or on
+// flush/close, so a crash loses at most the events of one unwritten block. A
+// block that cannot be written is reported and dropped, and a failed append is
+// cut off the segment, so recording never throws and later blocks stay readable.
+//
+// scan() skips segments by month and blocks by their day range without reading
+// them, decodes straight into an EventVisitor (no object per event), and without
+// dates inflates a block only up to datesOffset.
+public class HistoryStore implements Closeable {
+    public enum Outcome { CONSUMED, EXPIRED }
+    
+    // Receives the events a scan decodes, in the order they were recorded within each month
+    public interface EventVisitor {
+        // purchaseDay and expiryDay are 0 unless the scan asked for dates
+        void event(int day, Outcome outcome, String category, int quantity, int purchaseDay, int expiryDay);
+    }
+    
+    private static final String SUFFIX = ".seg";
+    private static final int HEADER_BYTES = 28;
+    private static final int BLOCK_EVENTS = 512;
+    private static final Outcome[] OUTCOMES = Outcome.values();
+    
+    private static final Metrics.Counter EVENTS = Metrics.counter("history.events");
+    private static final Metrics.Counter BLOCKS_READ = Metrics.counter("history.blocksRead");
+    private static final Metrics.Counter BLOCKS_SKIPPED = Metrics.counter("history.blocksSkipped");
+    private static final Metrics.Counter BYTES_READ = Metrics.counter("io.bytesRead");
+    private static final Metrics.Counter BYTES_WRITTEN = Metrics.counter("io.bytesWritten");
+    private static final Metrics.Counter ERRORS = Metrics.counter("io.errors");
+    private static final Metrics.Timer WRITE_BLOCK = Metrics.timer("history.writeBlock");
+    private static final Metrics.Timer SCAN = Metrics.timer("history.scan");
+    
+    private final File dir;
+    // Segments whose tail has been checked for a torn block this run
+    private final Set<File> checked = new HashSet<>();
+    
+    // Events not yet written, all from one month
+    private YearMonth pendingMonth;
+    private int pendingCount;
+    private final int[] days = new int[BLOCK_EVENTS];
+    private final byte[] outcomes = new byte[BLOCK_EVENTS];
+    private final String[] categories = new String[BLOCK_EVENTS];
+    private final int[] quantities = new int[BLOCK_EVENTS];
+    private final int[] purchaseDays = new int[BLOCK_EVENTS];
+    private final int[] expiryDays = new int[BLOCK_EVENTS];
+    
+    public HistoryStore(File dir) {
+        this.dir = dir;
+    }
+    
+    // Record one removal (day is the removal date as an epoch day); write failures are reported, not thrown
+    public synchronized void record(int day, Outcome outcome, String category, int quantity,
+                                    int purchaseDay, int expiryDay) {
+        YearMonth month = YearMonth.from(LocalDate.ofEpochDay(day));
+        if (pendingCount == BLOCK_EVENTS || (pendingCount > 0 && !month.equals(pendingMonth))) {
+            flushQuietly(); // written or dropped: either way the buffer is empty again
+        }
+        pendingMonth = month;
+        days[pendingCount] = day;
+        outcomes[pendingCount] = (byte) outcome.ordinal();
+        categories[pendingCount] = category;
+        quantities[pendingCount] = quantity;
+        purchaseDays[pendingCount] = purchaseDay;
+        expiryDays[pendingCount] = expiryDay;
+        pendingCount++;
+        EVENTS.increment();
+    }
+    
+    // Write buffered events as a block. If the write fails the segment is cut back to
+    // its previous length and the events stay buffered.
+    public synchronized void flush() throws IOException {
+        if (pendingCount == 0) {
+            return;
+        }
+        long start = Metrics.start();
+        byte[] raw = encodeBlock();
+        int datesOffset = raw.length - datesLength;
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        byte[] body = compressed.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        
+        File segment = segmentFile(pendingMonth);
+        FileHandler.ensureDirectory(dir);
+        if (checked.add(segment)) {
+            truncateTornTail(segment);
+        }
+        long length = segment.length();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segment, true)))) {
+            out.writeInt(minDay);
+            out.writeInt(maxDay);
+            out.writeInt(pendingCount);
+            out.writeInt(raw.length);
+            out.writeInt(datesOffset);
+            out.writeInt(body.length);
+            out.writeInt((int) crc.getValue());
+            out.write(body);
+        } catch (IOException e) {
+            truncateFailedAppend(segment, length);
+            throw e;
+        }
+        BYTES_WRITTEN.add(HEADER_BYTES + body.length);
+        Arrays.fill(categories, 0, pendingCount, null);
+        pendingCount = 0;
+        WRITE_BLOCK.stop(start);
+    }
+    
+    @Override
+    public void close() {
+        synchronized (this) {
+            flushQuietly();
+        }
+    }
+    
+    // Feed every event removed between fromDay and toDay (inclusive epoch days) to
+    // the visitor: written blocks month by month, then the buffered ones. Runs
+    // outside the lock over the segments as they were when it started, so
+    // recording is never held up by a long scan.
+    public void scan(int fromDay, int toDay, boolean withDates, EventVisitor visitor) throws IOException {
+        long start = Metrics.start();
+        Map<File, Long> lengths = new TreeMap<>();
+        int[] pendingDays;
+        byte[] pendingOutcomes;
+        String[] pendingCategories;
+        int[] pendingQuantities;
+        int[] pendingPurchases;
+        int[] pendingExpiries;
+        synchronized (this) {
+            File[] files = dir.listFiles((parent, name) -> name.endsWith(SUFFIX));
+            for (File file : files == null ? new File[0] : files) {
+                YearMonth month = monthOf(file);
+                if (month != null && month.atEndOfMonth().toEpochDay() >= fromDay
+                        && month.atDay(1).toEpochDay() <= toDay) {
+                    lengths.put(file, file.length());
+                }
+            }
+            pendingDays = Arrays.copyOf(days, pendingCount);
+            pendingOutcomes = Arrays.copyOf(outcomes, pendingCount);
+            pendingCategories = Arrays.copyOf(categories, pendingCount);
+            pendingQuantities = Arrays.copyOf(quantities, pendingCount);
+            pendingPurchases = Arrays.copyOf(purchaseDays, pendingCount);
+            pendingExpiries = Arrays.copyOf(expiryDays, pendingCount);
+        }
+        BlockReader reader = new BlockReader(withDates);
+        for (Map.Entry<File, Long> segment : lengths.entrySet()) {
+            reader.scanSegment(segment.getKey(), segment.getValue(), fromDay, toDay, visitor);
+        }
+        for (int i = 0; i < pendingDays.length; i++) {
+            if (pendingDays[i] >= fromDay && pendingDays[i] <= toDay) {
+                visitor.event(pendingDays[i], OUTCOMES[pendingOutcomes[i]], pendingCategories[i], pendingQuantities[i],
+                    withDates ? pendingPurchases[i] : 0, withDates ? pendingExpiries[i] : 0);
+            }
+        }
+        SCAN.stop(start);
+    }
+    
+    // Bytes of written history (headers and compressed blocks)
+    public long getStoredBytes() {
+        File[] files = dir.listFiles((parent, name) -> name.endsWith(SUFFIX));
+        long total = 0;
+        for (File file : files == null ? new File[0] : files) {
+            total += file.length();
+        }
+        return total;
+    }
+    
+    // Write buffered events, or drop them if that fails, so record() always has room
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            ERRORS.increment();
+            System.err.println("Error writing history, dropping " + pendingCount + " event(s): " + e.getMessage());
+            Arrays.fill(categories, 0, pendingCount, null);
+            pendingCount = 0;
+        }
+    }
+    
+    // Set by encodeBlock for the header
+    private int minDay;
+    private int maxDay;
+    private int datesLength;
+    
+    private byte[] encodeBlock() {
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        minDay = Integer.MAX_VALUE;
+        maxDay = Integer.MIN_VALUE;
+        for (int i = 0; i < pendingCount; i++) {
+            ids.putIfAbsent(categories[i], ids.size());
+            minDay = Math.min(minDay, days[i]);
+            maxDay = Math.max(maxDay, days[i]);
+        }
+        Varints out = new Varints(pendingCount * 8 + 64);
+        out.writeUnsigned(ids.size());
+        for (String category : ids.keySet()) {
+            byte[] bytes = category.getBytes(StandardCharsets.UTF_8);
+            out.writeUnsigned(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        int previous = minDay;
+        for (int i = 0; i < pendingCount; i++) {
+            out.writeSigned(days[i] - previous);
+            previous = days[i];
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            out.writeUnsigned(ids.get(categories[i]) << 1 | outcomes[i]);
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            out.writeSigned(quantities[i]);
+        }
+        int datesStart = out.size();
+        for (int i = 0; i < pendingCount; i++) {
+            out.writeSigned(days[i] - purchaseDays[i]);
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            out.writeSigned(expiryDays[i] - purchaseDays[i]);
+        }
+        datesLength = out.size() - datesStart;
+        return out.toByteArray();
+    }
+    
+    // Cut off a block left incomplete by a crash mid-append
+    private void truncateTornTail(File segment) throws IOException {
+        if (!segment.exists()) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long valid = new BlockReader(false).validLength(file, file.length());
+            if (valid < file.length()) {
+                System.err.println("Dropping " + (file.length() - valid) + " torn byte(s) at the end of " + segment);
+                file.setLength(valid);
+            }
+        }
+    }
+    
+    // Remove the bytes of a block whose append failed part way, so the blocks written
+    // after it stay readable; if even that fails, the next flush checks the tail again
+    private void truncateFailedAppend(File segment, long length) {
+        if (!segment.isFile()) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            if (file.length() > length) {
+                file.setLength(length);
+            }
+        } catch (IOException e) {
+            checked.remove(segment);
+        }
+    }
+    
+    private File segmentFile(YearMonth month) {
+        return new File(dir, month + SUFFIX);
+    }
+    
+    private static YearMonth monthOf(File segment) {
+        String name = segment.getName();
+        try {
+            return YearMonth.parse(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+    
+    // Decodes blocks into reused primitive columns
+    private static final class BlockReader {
+        private final boolean withDates;
+        private final Inflater inflater = new Inflater();
+        private byte[] compressed = new byte[8192];
+        private byte[] raw = new byte[16384];
+        private final int[] days = new int[BLOCK_EVENTS];
+        private final int[] kinds = new int[BLOCK_EVENTS];
+        private final int[] quantities = new int[BLOCK_EVENTS];
+        private final int[] ages = new int[BLOCK_EVENTS];
+        private final int[] planned = new int[BLOCK_EVENTS];
+        private String[] dictionary = new String[16];
+        
+        BlockReader(boolean withDates) {
+            this.withDates = withDates;
+        }
+        
+        void scanSegment(File segment, long length, int fromDay, int toDay, EventVisitor visitor) throws IOException {
+            try (RandomAccessFile file = new RandomAccessFile(segment, "r")) {
+                long position = 0;
+                while (position + HEADER_BYTES <= length) {
+                    file.seek(position);
+                    int blockMin = file.readInt();
+                    int blockMax = file.readInt();
+                    int count = file.readInt();
+                    int rawLength = file.readInt();
+                    int datesOffset = file.readInt();
+                    int compressedLength = file.readInt();
+                    int crc = file.readInt();
+                    long next = position + HEADER_BYTES + compressedLength;
+                    if (next > length || count > BLOCK_EVENTS) {
+                        break; // torn tail, cut off before the next append
+                    }
+                    position = next;
+                    if (blockMax < fromDay || blockMin > toDay) {
+                        BLOCKS_SKIPPED.increment();
+                        continue;
+                    }
+                    if (!readBlock(file, compressedLength, crc, withDates ? rawLength : datesOffset)) {
+                        ERRORS.increment();
+                        System.err.println("Skipping corrupt history block in " + segment);
+                        continue;
+                    }
+                    BLOCKS_READ.increment();
+                    decode(count, blockMin, fromDay, toDay, visitor);
+                }
+            }
+        }
+        
+        // Length of the file up to its last complete, intact block
+        long validLength(RandomAccessFile file, long length) throws IOException {
+            long position = 0;
+            while (position + HEADER_BYTES <= length) {
+                file.seek(position);
+                file.skipBytes(20);
+                int compressedLength = file.readInt();
+                int crc = file.readInt();
+                if (position + HEADER_BYTES + compressedLength > length || !checksumMatches(file, compressedLength, crc)) {
+                    break;
+                }
+                position += HEADER_BYTES + compressedLength;
+            }
+            return position;
+        }
+        
+        private boolean checksumMatches(RandomAccessFile file, int compressedLength, int crc) throws IOException {
+            if (compressed.length < compressedLength) {
+                compressed = new byte[compressedLength];
+            }
+            file.readFully(compressed, 0, compressedLength);
+            BYTES_READ.add(HEADER_BYTES + compressedLength);
+            CRC32 check = new CRC32();
+            check.update(compressed, 0, compressedLength);
+            return (int) check.getValue() == crc;
+        }
+        
+        // Inflate the first `needed` raw bytes of a block into raw
+        private boolean readBlock(RandomAccessFile file, int compressedLength, int crc, int needed) throws IOException {
+            if (!checksumMatches(file, compressedLength, crc)) {
+                return false;
+            }
+            if (raw.length < needed) {
+                raw = new byte[needed];
+            }
+            inflater.reset();
+            inflater.setInput(compressed, 0, compressedLength);
+            try {
+                int filled = 0;
+                while (filled < needed) {
+                    int inflated = inflater.inflate(raw, filled, needed - filled);
+                    if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                        return false;
+                    }
+                    filled += inflated;
+                }
+                return true;
+            } catch (DataFormatException e) {
+                return false;
+            }
+        }
+        
+        private void decode(int count, int blockMin, int fromDay, int toDay, EventVisitor visitor) {
+            Varints in = new Varints(raw);
+            int categoryCount = in.readUnsigned();
+            if (dictionary.length < categoryCount) {
+                dictionary = new String[categoryCount];
+            }
+            for (int i = 0; i < categoryCount; i++) {
+                int length = in.readUnsigned();
+                dictionary[i] = new String(raw, in.position, length, StandardCharsets.UTF_8);
+                in.position += length;
+            }
+            int day = blockMin;
+            for (int i = 0; i < count; i++) {
+                day += in.readSigned();
+                days[i] = day;
+            }
+            for (int i = 0; i < count; i++) {
+                kinds[i] = in.readUnsigned();
+            }
+            for (int i = 0; i < count; i++) {
+                quantities[i] = in.readSigned();
+            }
+            if (withDates) {
+                for (int i = 0; i < count; i++) {
+                    ages[i] = in.readSigned();
+                }
+                for (int i = 0; i < count; i++) {
+                    planned[i] = in.readSigned();
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                if (days[i] < fromDay || days[i] > toDay) {
+                    continue;
+                }
+                int purchaseDay = withDates ? days[i] - ages[i] : 0;
+                visitor.event(days[i], OUTCOMES[kinds[i] & 1], dictionary[kinds[i] >>> 1], quantities[i],
+                    purchaseDay, withDates ? purchaseDay + planned[i] : 0);
+            }
+        }
+    }
+    
+    // LEB128 varints over a byte array; signed values are zigzag-encoded
+    private static final class Varints {
+        private byte[] bytes;
+        private int position;
+        
+        Varints(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+        
+        Varints(byte[] bytes) {
+            this.bytes = bytes;
+        }
+        
+        void writeUnsigned(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+        
+        void writeSigned(int value) {
+            writeUnsigned((value << 1) ^ (value >> 31));
+        }
+        
+        void write(byte[] source, int offset, int length) {
+            ensure(length);
+            System.arraycopy(source, offset, bytes, position, length);
+            position += length;
+        }
+        
+        int readUnsigned() {
+            int value = 0;
+            int shift = 0;
+            byte next;
+            do {
+                next = bytes[position++];
+                value |= (next & 0x7F) << shift;
+                shift += 7;
+            } while (next < 0);
+            return value;
+        }
+        
+        int readSigned() {
+            int value = readUnsigned();
+            return (value >>> 1) ^ -(value & 1);
+        }
+        
+        int size() {
+            return position;
+        }
+        
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, position);
+        }
+        
+        private void ensure(int extra) {
+            if (position + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package util;
+
+import model.GroceryItem;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+
+// CSV encoding of a GroceryItem: name,category,purchaseDate,expiryDate,quantity.
+// Fields are scanned in place (no split, no per-field substrings for dates
+// and numbers), dates must be yyyy-MM-dd, and text fields follow RFC 4180:
+// a field containing a comma, quote or line break is wrapped in quotes and
+// embedded quotes are doubled.
+public class ItemCsv {
+    static final int FIELD_COUNT = 5;
+    private static final long DAYS_0000_TO_1970 = 719_528;
+    
+    // Thrown for a record that cannot be parsed
+    public static class CsvFormatException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+        
+        private final int lineNumber;
+        
+        public CsvFormatException(String message, int lineNumber) {
+            super(lineNumber > 0 ? "line " + lineNumber + ": " + message : message);
+            this.lineNumber = lineNumber;
+        }
+        
+        public int getLineNumber() { return lineNumber; }
+    }
+    
+    // Parse one record
+    public static GroceryItem parse(CharSequence record) {
+        return parse(record, 0, null, new int[FIELD_COUNT * 2], new boolean[FIELD_COUNT]);
+    }
+    
+    // Parse one record using caller-owned scratch arrays. lineNumber is used in
+    // error messages; categories (may be null) lets repeated category names share one String.
+    static GroceryItem parse(CharSequence record, int lineNumber, String[] categories,
+                             int[] bounds, boolean[] quoted) {
+        int fields = scanFields(record, bounds, quoted, lineNumber);
+        if (fields != FIELD_COUNT) {
+            throw new CsvFormatException("expected " + FIELD_COUNT + " fields but found " + fields, lineNumber);
+        }
+        
+        String name = text(record, bounds[0], bounds[1], quoted[0]);
+        String category = categories == null
+            ? text(record, bounds[2], bounds[3], quoted[1])
+            : sharedText(record, bounds[2], bounds[3], quoted[1], categories);
+        long purchaseDay = parseEpochDay(record, bounds[4], bounds[5], lineNumber);
+        long expiryDay = parseEpochDay(record, bounds[6], bounds[7], lineNumber);
+        int quantity = parseInt(record, bounds[8], bounds[9], lineNumber);
+        
+        return new GroceryItem(name, category, (int) purchaseDay, (int) expiryDay, quantity);
+    }
+    
+    // Append one record (without a line terminator)
+    public static void write(GroceryItem item, Appendable out) throws IOException {
+        writeText(item.getName(), out);
+        out.append(',');
+        writeText(item.getCategory(), out);
+        out.append(',');
+        writeDate(item.getPurchaseDay(), out);
+        out.append(',');
+        writeDate(item.getExpiryDay(), out);
+        out.append(',');
+        out.append(Integer.toString(item.getQuantity()));
+    }
+    
+    public static String format(GroceryItem item) {
+        StringBuilder builder = new StringBuilder(48);
+        try {
+            write(item, builder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder does not throw
+        }
+        return builder.toString();
+    }
+    
+    // Parse yyyy-MM-dd straight to an epoch day
+    public static long parseEpochDay(CharSequence s, int start, int end, int lineNumber) {
+        if (end - start != 10 || s.charAt(start + 4) != '-' || s.charAt(start + 7) != '-') {
+            throw new CsvFormatException("bad date '" + s.subSequence(start, end) + "'", lineNumber);
+        }
+        int year = digits(s, start, start + 4, lineNumber);
+        int month = digits(s, start + 5, start + 7, lineNumber);
+        int day = digits(s, start + 8, start + 10, lineNumber);
+        if (month < 1 || month > 12 || day < 1 || day > monthLength(year, month)) {
+            throw new CsvFormatException("bad date '" + s.subSequence(start, end) + "'", lineNumber);
+        }
+        
+        // Same arithmetic as LocalDate.toEpochDay for years 0-9999
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+    
+    // Record field boundaries as [start, end) pairs; returns the number of fields
+    private static int scanFields(CharSequence s, int[] bounds, boolean[] quoted, int lineNumber) {
+        int length = s.length();
+        int field = 0;
+        int i = 0;
+        while (true) {
+            if (field == FIELD_COUNT) {
+                return field + 1; // too many fields
+            }
+            int start;
+            int end;
+            if (i < length && s.charAt(i) == '"') {
+                quoted[field] = true;
+                start = ++i;
+                while (true) {
+                    if (i >= length) {
+                        throw new CsvFormatException("unterminated quoted field", lineNumber);
+                    }
+                    if (s.charAt(i) == '"') {
+                        if (i + 1 < length && s.charAt(i + 1) == '"') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                end = i++;
+                if (i < length && s.charAt(i) != ',') {
+                    throw new CsvFormatException("unexpected character after quoted field", lineNumber);
+                }
+            } else {
+                quoted[field] = false;
+                start = i;
+                while (i < length && s.charAt(i) != ',') {
+                    i++;
+                }
+                end = i;
+            }
+            bounds[field * 2] = start;
+            bounds[field * 2 + 1] = end;
+            field++;
+            if (i >= length) {
+                return field;
+            }
+            i++; // skip comma
+        }
+    }
+    
+    private static String text(CharSequence s, int start, int end, boolean quoted) {
+        if (!quoted) {
+            return s.subSequence(start, end).toString();
+        }
+        StringBuilder builder = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            builder.append(c);
+            if (c == '"') {
+                i++; // skip the second quote of a doubled pair
+            }
+        }
+        return builder.toString();
+    }
+    
+    // Reuse a previously seen string with the same content, if any
+    private static String sharedText(CharSequence s, int start, int end, boolean quoted, String[] cache) {
+        if (!quoted) {
+            int length = end - start;
+            for (String candidate : cache) {
+                if (candidate == null) {
+                    break;
+                }
+                if (candidate.length() == length && regionEquals(candidate, s, start)) {
+                    return candidate;
+                }
+            }
+        }
+        String value = text(s, start, end, quoted);
+        // Keep the most recent values at the front
+        System.arraycopy(cache, 0, cache, 1, cache.length - 1);
+        cache[0] = value;
+        return value;
+    }
+    
+    private static boolean regionEquals(String candidate, CharSequence s, int start) {
+        for (int i = 0; i < candidate.length(); i++) {
+            if (candidate.charAt(i) != s.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // The full int range, as Integer.toString writes it (leading zeros allowed)
+    private static int parseInt(CharSequence s, int start, int end, int lineNumber) {
+        boolean negative = start < end && s.charAt(start) == '-';
+        int first = negative ? start + 1 : start;
+        if (first == end) {
+            throw new CsvFormatException("bad quantity '" + s.subSequence(start, end) + "'", lineNumber);
+        }
+        long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long value = 0;
+        for (int i = first; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new CsvFormatException("expected a digit but found '" + c + "'", lineNumber);
+            }
+            value = value * 10 + (c - '0');
+            if (value > limit) {
+                throw new CsvFormatException("quantity out of range '" + s.subSequence(start, end) + "'", lineNumber);
+            }
+        }
+        return (int) (negative ? -value : value);
+    }
+    
+    private static int digits(CharSequence s, int start, int end, int lineNumber) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new CsvFormatException("expected a digit but found '" + c + "'", lineNumber);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+    
+    private static void writeText(String value, Appendable out) throws IOException {
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+    
+    // Epoch day to yyyy-MM-dd without going through LocalDate
+    public static void writeDate(long epochDay, Appendable out) throws IOException {
+        // Civil-from-days (proleptic Gregorian, eras of 400 years starting March 1st)
+        long days = epochDay + DAYS_0000_TO_1970 - 60;
+        long era = Math.floorDiv(days, 146_097);
+        long dayOfEra = days - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        
+        if (year < 0 || year > 9999) {
+            out.append(LocalDate.ofEpochDay(epochDay).toString());
+            return;
+        }
+        appendPadded((int) year, 4, out);
+        out.append('-');
+        appendPadded(month, 2, out);
+        out.append('-');
+        appendPadded(day, 2, out);
+    }
+    
+    // width is 2 or 4
+    private static void appendPadded(int value, int width, Appendable out) throws IOException {
+        int divisor = width == 4 ? 1000 : 10;
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + value / divisor % 10));
+        }
+    }
+    
+    private static int monthLength(int year, int month) {
+        return switch (month) {
+            case 2 -> isLeapYear(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+    
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+}
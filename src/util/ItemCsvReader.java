@@ -0,0 +1,146 @@
+package util;
+
+import model.GroceryItem;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streams GroceryItems out of CSV text. Records may span lines inside quoted
+// fields; blank lines are skipped. Malformed records are skipped and collected
+// (with their line numbers) instead of being printed one by one.
+public class ItemCsvReader implements Closeable {
+    private static final int MAX_KEPT_ERRORS = 20;
+    private static final Metrics.Counter PARSE_ERRORS = Metrics.counter("csv.parseErrors");
+    
+    private final Reader in;
+    private final char[] buffer = new char[1 << 16];
+    private int position;
+    private int limit;
+    private int lineNumber = 1;
+    
+    // Reused for every record
+    private final StringBuilder record = new StringBuilder(128);
+    private final int[] bounds = new int[ItemCsv.FIELD_COUNT * 2];
+    private final boolean[] quoted = new boolean[ItemCsv.FIELD_COUNT];
+    private final String[] categories = new String[16];
+    
+    private final List<String> errors = new ArrayList<>();
+    private int errorCount;
+    
+    public ItemCsvReader(Reader in) {
+        this(in, 1);
+    }
+    
+    // For input that starts partway through a file
+    public ItemCsvReader(Reader in, int firstLineNumber) {
+        this.in = in;
+        this.lineNumber = firstLineNumber;
+    }
+    
+    // Next valid item, or null at end of input
+    public GroceryItem next() throws IOException {
+        while (true) {
+            int recordLine = lineNumber;
+            if (!readRecord()) {
+                return null;
+            }
+            if (isBlank(record)) {
+                continue;
+            }
+            try {
+                return ItemCsv.parse(record, recordLine, categories, bounds, quoted);
+            } catch (ItemCsv.CsvFormatException e) {
+                errorCount++;
+                PARSE_ERRORS.increment();
+                if (errors.size() < MAX_KEPT_ERRORS) {
+                    errors.add(e.getMessage());
+                }
+            }
+        }
+    }
+    
+    // Number of records skipped as malformed
+    public int getErrorCount() {
+        return errorCount;
+    }
+    
+    // Messages for the first skipped records ("line N: ...")
+    public List<String> getErrors() {
+        return errors;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+    
+    // Read one record into `record`; false at end of input
+    private boolean readRecord() throws IOException {
+        record.setLength(0);
+        boolean inQuotes = false;
+        boolean fieldStart = true;
+        boolean quoteClosed = false; // the previous character closed a quoted field
+        boolean sawAny = false;
+        while (true) {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return sawAny;
+                }
+            }
+            sawAny = true;
+            char c = buffer[position++];
+            // Per RFC 4180 only a quote at the start of a field opens a quoted field; a
+            // quote inside an unquoted field is a literal (as in older files: 12" Sub)
+            if (inQuotes) {
+                if (c == '"') {
+                    inQuotes = false;
+                    quoteClosed = true;
+                }
+            } else if (c == '"' && (fieldStart || quoteClosed)) {
+                inQuotes = true; // opens the field, or is the second quote of a doubled pair
+                quoteClosed = false;
+            } else {
+                quoteClosed = false;
+            }
+            fieldStart = !inQuotes && c == ',';
+            if ((c == '\n' || c == '\r') && !inQuotes) {
+                if (c == '\r') {
+                    skipLineFeed();
+                }
+                lineNumber++;
+                return true;
+            } else if (c == '\n') {
+                lineNumber++;
+            }
+            record.append(c);
+        }
+    }
+    
+    private void skipLineFeed() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return;
+            }
+        }
+        if (buffer[position] == '\n') {
+            position++;
+        }
+    }
+    
+    private static boolean isBlank(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,236 @@
+package util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Append-only write-ahead log of inventory mutations, one record per line:
+// "type,payload". A payload with a line break (a quoted CSV name) is written as
+// "type\,payload" with backslash, LF and CR escaped as \\, \n and \r, so a
+// record never spans lines in the log or in a replication batch.
+public class Journal {
+    public static final String ADD = "A";
+    public static final String DELETE = "D";
+    public static final String QUANTITY = "Q";
+    public static final String CONSUME = "C";
+    public static final String RESTORE = "R";
+    // Written by compaction into the rotated log: the records before it are in the
+    // snapshot whose stamp is the payload (see FileHandler.compact)
+    public static final String FOLDED = "F";
+    
+    private static final Metrics.Counter RECORDS = Metrics.counter("journal.records");
+    private static final Metrics.Counter BYTES_WRITTEN = Metrics.counter("io.bytesWritten");
+    private static final Metrics.Counter ERRORS = Metrics.counter("io.errors");
+    private static final Metrics.Timer COMMIT = Metrics.timer("journal.commit");
+    
+    // When appended records are forced to disk
+    public enum FsyncPolicy {
+        ALWAYS,   // fsync on every append
+        BATCH,    // group commit: flush + fsync once per commit interval
+        NEVER     // flush to the OS once per commit interval, never fsync
+    }
+    
+    private final File logFile;
+    private final FsyncPolicy fsyncPolicy;
+    private final ScheduledExecutorService committer;
+    private FileOutputStream out;
+    private Writer writer;
+    private final StringBuilder line = new StringBuilder(128);
+    private int recordCount;
+    private boolean dirty;
+    
+    public Journal(File logFile, FsyncPolicy fsyncPolicy, long commitIntervalMillis) throws IOException {
+        this.logFile = logFile;
+        this.fsyncPolicy = fsyncPolicy;
+        this.recordCount = countRecords(logFile);
+        open();
+        
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            this.committer = null;
+        } else {
+            this.committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+            committer.scheduleWithFixedDelay(this::commitQuietly,
+                commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    // Append one record; durability depends on the fsync policy
+    public synchronized void append(String type, String payload) {
+        try {
+            line.setLength(0);
+            formatRecord(type, payload, line);
+            writer.append(line);
+            recordCount++;
+            dirty = true;
+            RECORDS.increment();
+            BYTES_WRITTEN.add(line.length()); // ASCII-sized estimate
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                commit();
+            }
+        } catch (IOException e) {
+            ERRORS.increment();
+            System.err.println("Error appending to journal: " + e.getMessage());
+        }
+    }
+    
+    // Flush buffered records and force them to disk if the policy asks for it
+    public synchronized void commit() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        long start = Metrics.start();
+        writer.flush();
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            out.getChannel().force(false);
+        }
+        dirty = false;
+        COMMIT.stop(start);
+    }
+    
+    // Number of records in the current log file
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+    
+    // Move the current log aside and start an empty one. A rotated log left by a
+    // compaction that crashed or failed may hold records the snapshot lacks, so the
+    // current log is appended to it rather than replacing it.
+    public synchronized void rotate(File rotatedFile) throws IOException {
+        commit();
+        writer.close();
+        if (rotatedFile.exists()) {
+            try (FileOutputStream rotated = new FileOutputStream(rotatedFile, true)) {
+                if (!endsWithLineBreak(rotatedFile)) {
+                    rotated.write('\n'); // end a record torn by the crash, so it cannot swallow the next one
+                }
+                Files.copy(logFile.toPath(), rotated);
+                rotated.getChannel().force(false);
+            }
+            Files.delete(logFile.toPath());
+        } else {
+            Files.move(logFile.toPath(), rotatedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        recordCount = 0;
+        open();
+    }
+    
+    public synchronized void close() {
+        if (committer != null) {
+            committer.shutdown();
+        }
+        try {
+            commit();
+            writer.close();
+        } catch (IOException e) {
+            ERRORS.increment();
+            System.err.println("Error closing journal: " + e.getMessage());
+        }
+    }
+    
+    // Append one record to a log file no Journal has open, and force it to disk
+    public static void appendRecord(File file, String type, String payload) throws IOException {
+        StringBuilder record = new StringBuilder(payload.length() + 8);
+        formatRecord(type, payload, record);
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(record.toString().getBytes(StandardCharsets.UTF_8));
+            out.getChannel().force(false);
+        }
+    }
+    
+    // Feed every record of a log file to the consumer as {type, payload}
+    public static void replay(File file, Consumer<String[]> consumer) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] record = parseRecord(line);
+                if (record != null) {
+                    consumer.accept(record);
+                }
+            }
+        }
+    }
+    
+    // One record as a log line ("type,payload\n"), the form also shipped to standbys
+    public static void formatRecord(String type, String payload, StringBuilder out) {
+        if (payload.indexOf('\n') < 0 && payload.indexOf('\r') < 0) {
+            out.append(type).append(',').append(payload).append('\n');
+            return;
+        }
+        out.append(type).append("\\,");
+        for (int i = 0; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                default -> out.append(c);
+            }
+        }
+        out.append('\n');
+    }
+    
+    // {type, payload} of one log line, or null if it has no type
+    public static String[] parseRecord(String line) {
+        int comma = line.indexOf(',');
+        if (comma <= 0) {
+            return null;
+        }
+        if (line.charAt(comma - 1) != '\\') {
+            return new String[] { line.substring(0, comma), line.substring(comma + 1) };
+        }
+        StringBuilder payload = new StringBuilder(line.length() - comma);
+        for (int i = comma + 1; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                char escaped = line.charAt(++i);
+                payload.append(escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+            } else {
+                payload.append(c);
+            }
+        }
+        return comma > 1 ? new String[] { line.substring(0, comma - 1), payload.toString() } : null;
+    }
+    
+    private void open() throws IOException {
+        out = new FileOutputStream(logFile, true);
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+    
+    private void commitQuietly() {
+        try {
+            commit();
+        } catch (IOException e) {
+            ERRORS.increment();
+            System.err.println("Error committing journal: " + e.getMessage());
+        }
+    }
+    
+    private static boolean endsWithLineBreak(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() == 0) {
+                return true;
+            }
+            in.seek(in.length() - 1);
+            return in.read() == '\n';
+        }
+    }
+    
+    private static int countRecords(File file) throws IOException {
+        int[] count = new int[1];
+        replay(file, record -> count[0]++);
+        return count[0];
+    }
+}
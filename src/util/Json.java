@@ -0,0 +1,265 @@
+package util;
+
+import model.GroceryItem;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+// Minimal JSON support for the HTTP API: writes items, maps, lists, strings
+// and numbers, and reads flat objects whose values are strings, numbers,
+// booleans or null (all returned as strings, null as a missing key).
+public class Json {
+    // Append an item as {"name":..,"category":..,"purchaseDate":..,"expiryDate":..,"quantity":..}
+    public static void appendItem(StringBuilder out, GroceryItem item) {
+        out.append("{\"name\":");
+        appendString(out, item.getName());
+        out.append(",\"category\":");
+        appendString(out, item.getCategory());
+        out.append(",\"purchaseDate\":\"");
+        appendDate(out, item.getPurchaseDay());
+        out.append("\",\"expiryDate\":\"");
+        appendDate(out, item.getExpiryDay());
+        out.append("\",\"quantity\":").append(item.getQuantity()).append('}');
+    }
+    
+    public static void appendItems(StringBuilder out, Collection<GroceryItem> items) {
+        out.append('[');
+        boolean first = true;
+        for (GroceryItem item : items) {
+            if (!first) {
+                out.append(',');
+            }
+            appendItem(out, item);
+            first = false;
+        }
+        out.append(']');
+    }
+    
+    // Maps, collections, items, numbers, booleans, null; anything else as a string
+    public static void appendValue(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof GroceryItem) {
+            appendItem(out, (GroceryItem) value);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                appendString(out, String.valueOf(entry.getKey()));
+                out.append(':');
+                appendValue(out, entry.getValue());
+                first = false;
+            }
+            out.append('}');
+        } else if (value instanceof Collection) {
+            out.append('[');
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                if (!first) {
+                    out.append(',');
+                }
+                appendValue(out, element);
+                first = false;
+            }
+            out.append(']');
+        } else {
+            appendString(out, value.toString());
+        }
+    }
+    
+    public static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+    
+    // Parse a flat JSON object; throws IllegalArgumentException on anything else
+    public static Map<String, String> parseObject(String text) {
+        Parser parser = new Parser(text);
+        Map<String, String> result = parser.object();
+        parser.skipWhitespace();
+        if (!parser.atEnd()) {
+            throw new IllegalArgumentException("unexpected content after JSON object");
+        }
+        return result;
+    }
+    
+    // Item from an object with name, category, purchaseDate, expiryDate (yyyy-MM-dd), quantity
+    public static GroceryItem parseItem(String text) {
+        Map<String, String> fields = parseObject(text);
+        String name = required(fields, "name");
+        String category = required(fields, "category");
+        String purchase = required(fields, "purchaseDate");
+        String expiry = required(fields, "expiryDate");
+        int quantity;
+        try {
+            quantity = Integer.parseInt(required(fields, "quantity"));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("quantity must be an integer");
+        }
+        long purchaseDay = ItemCsv.parseEpochDay(purchase, 0, purchase.length(), 0);
+        long expiryDay = ItemCsv.parseEpochDay(expiry, 0, expiry.length(), 0);
+        return new GroceryItem(name, category, (int) purchaseDay, (int) expiryDay, quantity);
+    }
+    
+    private static String required(Map<String, String> fields, String key) {
+        String value = fields.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("missing field '" + key + "'");
+        }
+        return value;
+    }
+    
+    private static void appendDate(StringBuilder out, long epochDay) {
+        try {
+            ItemCsv.writeDate(epochDay, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder does not throw
+        }
+    }
+    
+    // Recursive-descent reader for one flat object
+    private static class Parser {
+        private final String text;
+        private int position;
+        
+        private Parser(String text) {
+            this.text = text;
+        }
+        
+        private Map<String, String> object() {
+            Map<String, String> result = new LinkedHashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return result;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                String value = scalar();
+                if (value != null) {
+                    result.put(key, value);
+                }
+                skipWhitespace();
+                char c = next();
+                if (c == '}') {
+                    return result;
+                }
+                if (c != ',') {
+                    throw new IllegalArgumentException("expected ',' or '}' at offset " + (position - 1));
+                }
+            }
+        }
+        
+        private String scalar() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            }
+            int start = position;
+            while (!atEnd() && ",} \t\r\n".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.equals("true") || literal.equals("false") || literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+                return literal;
+            }
+            throw new IllegalArgumentException("unsupported value at offset " + start);
+        }
+        
+        private String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case '"', '\\', '/' -> value.append(escaped);
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'u' -> {
+                        if (position + 4 > text.length()) {
+                            throw new IllegalArgumentException("bad unicode escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("bad unicode escape");
+                        }
+                        position += 4;
+                    }
+                    default -> throw new IllegalArgumentException("bad escape '\\" + escaped + "'");
+                }
+            }
+        }
+        
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw new IllegalArgumentException("expected '" + expected + "' at offset " + (position - 1));
+            }
+        }
+        
+        private char next() {
+            if (atEnd()) {
+                throw new IllegalArgumentException("unexpected end of JSON");
+            }
+            return text.charAt(position++);
+        }
+        
+        private char peek() {
+            if (atEnd()) {
+                throw new IllegalArgumentException("unexpected end of JSON");
+            }
+            return text.charAt(position);
+        }
+        
+        private void skipWhitespace() {
+            while (!atEnd() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+        
+        private boolean atEnd() {
+            return position >= text.length();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+// Process-wide instrumentation: named timers (latency histograms) and counters
+// for the inventory and storage hot paths. Recording is lock-free and never
+// allocates. Read them with dump() or over JMX once registerMBeans() has run
+// (domain "set", e.g. set:type=Timer,name=file.saveItems).
+//
+// -Dset.metrics=off makes every timer and counter a no-op the JIT removes;
+// setRecording(false) pauses recording at runtime for one volatile read per call.
+//
+//   long start = Metrics.start();
+//   ...
+//   SAVE.stop(start);
+public class Metrics {
+    private static final boolean ENABLED = !"off".equalsIgnoreCase(System.getProperty("set.metrics"));
+    private static volatile boolean recording = true;
+    
+    private static final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private static final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private static volatile MBeanServer mbeanServer; // set by registerMBeans
+    
+    public interface TimerMBean {
+        long getCount();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP90Millis();
+        double getP99Millis();
+        double getMaxMillis();
+        void reset();
+    }
+    
+    public interface CounterMBean {
+        long getValue();
+        void reset();
+    }
+    
+    public interface MetricsMBean {
+        boolean isEnabled();
+        boolean isRecording();
+        void setRecording(boolean recording);
+        String dump();
+        void reset();
+    }
+    
+    // Latency of one operation
+    public static final class Timer implements TimerMBean {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        
+        private Timer() {
+        }
+        
+        // Record the time since a Metrics.start() value (0 when not recording)
+        public void stop(long start) {
+            if (ENABLED && start != 0) {
+                histogram.record(System.nanoTime() - start);
+            }
+        }
+        
+        // Record a duration measured some other way (e.g. from process start)
+        public void record(long nanos) {
+            if (ENABLED && recording) {
+                histogram.record(nanos);
+            }
+        }
+        
+        public LatencyHistogram getHistogram() { return histogram; }
+        @Override
+        public long getCount() { return histogram.getCount(); }
+        @Override
+        public double getMeanMillis() { return histogram.getMeanNanos() / 1e6; }
+        @Override
+        public double getP50Millis() { return histogram.getPercentileNanos(50) / 1e6; }
+        @Override
+        public double getP90Millis() { return histogram.getPercentileNanos(90) / 1e6; }
+        @Override
+        public double getP99Millis() { return histogram.getPercentileNanos(99) / 1e6; }
+        @Override
+        public double getMaxMillis() { return histogram.getMaxNanos() / 1e6; }
+        @Override
+        public void reset() { histogram.reset(); }
+    }
+    
+    // Running total (events, bytes, failures)
+    public static final class Counter implements CounterMBean {
+        private final LongAdder value = new LongAdder();
+        
+        private Counter() {
+        }
+        
+        public void increment() {
+            add(1);
+        }
+        
+        public void add(long amount) {
+            if (ENABLED && recording) {
+                value.add(amount);
+            }
+        }
+        
+        @Override
+        public long getValue() { return value.sum(); }
+        @Override
+        public void reset() { value.reset(); }
+    }
+    
+    // The timer with this name, created on first use
+    public static Timer timer(String name) {
+        return timers.computeIfAbsent(name, key -> register("Timer", key, new Timer(), TimerMBean.class));
+    }
+    
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> register("Counter", key, new Counter(), CounterMBean.class));
+    }
+    
+    // Start time for Timer.stop, or 0 when not recording
+    public static long start() {
+        return ENABLED && recording ? System.nanoTime() : 0;
+    }
+    
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+    
+    public static boolean isRecording() {
+        return ENABLED && recording;
+    }
+    
+    public static void setRecording(boolean on) {
+        recording = on;
+    }
+    
+    public static Map<String, Timer> getTimers() {
+        return timers;
+    }
+    
+    public static Map<String, Counter> getCounters() {
+        return counters;
+    }
+    
+    // Zero every timer and counter
+    public static void reset() {
+        timers.values().forEach(Timer::reset);
+        counters.values().forEach(Counter::reset);
+    }
+    
+    // Text table of every timer that has recorded something, then every counter
+    public static String dump() {
+        if (!ENABLED) {
+            return "Metrics are off (-Dset.metrics=off)\n";
+        }
+        StringBuilder out = new StringBuilder(2048);
+        out.append(String.format("%-30s %10s %10s %10s %10s %10s %10s%n",
+            "Operation", "Count", "Mean ms", "p50 ms", "p90 ms", "p99 ms", "Max ms"));
+        timers.forEach((name, timer) -> {
+            if (timer.getCount() > 0) {
+                out.append(String.format("%-30s %10d %10.3f %10.3f %10.3f %10.3f %10.3f%n", name, timer.getCount(),
+                    timer.getMeanMillis(), timer.getP50Millis(), timer.getP90Millis(), timer.getP99Millis(), timer.getMaxMillis()));
+            }
+        });
+        out.append(String.format("%n%-30s %10s%n", "Counter", "Value"));
+        counters.forEach((name, counter) -> out.append(String.format("%-30s %10d%n", name, counter.getValue())));
+        if (!recording) {
+            out.append("(recording paused)\n");
+        }
+        return out.toString();
+    }
+    
+    // Publish the metrics on the platform MBean server; later timers and counters register as they appear
+    public static synchronized void registerMBeans() {
+        if (!ENABLED || mbeanServer != null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new StandardMBean(new MetricsMBean() {
+                @Override
+                public boolean isEnabled() { return Metrics.isEnabled(); }
+                @Override
+                public boolean isRecording() { return Metrics.isRecording(); }
+                @Override
+                public void setRecording(boolean on) { Metrics.setRecording(on); }
+                @Override
+                public String dump() { return Metrics.dump(); }
+                @Override
+                public void reset() { Metrics.reset(); }
+            }, MetricsMBean.class), new ObjectName("set:type=Metrics"));
+        } catch (JMException e) {
+            System.err.println("Error registering metrics MBean: " + e.getMessage());
+        }
+        mbeanServer = server;
+        timers.forEach((name, timer) -> register("Timer", name, timer, TimerMBean.class));
+        counters.forEach((name, counter) -> register("Counter", name, counter, CounterMBean.class));
+    }
+    
+    private static <T> T register(String type, String name, T bean, Class<? super T> beanInterface) {
+        MBeanServer server = mbeanServer;
+        if (server == null) {
+            return bean;
+        }
+        Hashtable<String, String> properties = new Hashtable<>();
+        properties.put("type", type);
+        properties.put("name", name);
+        try {
+            ObjectName objectName = new ObjectName("set", properties);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(new StandardMBean(bean, uncheckedCast(beanInterface)), objectName);
+            }
+        } catch (JMException e) {
+            System.err.println("Error registering MBean " + name + ": " + e.getMessage());
+        }
+        return bean;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> Class<T> uncheckedCast(Class<? super T> type) {
+        return (Class<T>) type;
+    }
+}
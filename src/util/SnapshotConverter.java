@@ -0,0 +1,86 @@
+package util;
+
+import model.GroceryItem;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Converts between the text and binary snapshot formats, and compares their load times.
+//
+//   java util.SnapshotConverter to-binary data/items.txt data/items.bin
+//   java util.SnapshotConverter to-text data/items.bin data/items.txt
+//   java util.SnapshotConverter compare [itemCount]
+public class SnapshotConverter {
+    private static final String[] CATEGORIES = {
+        "Dairy", "Fruits", "Vegetables", "Meat & Poultry", "Bakery",
+        "Grains & Pasta", "Beverages", "Snacks", "Frozen Foods",
+        "Condiments & Spices", "Canned Goods", "Other"
+    };
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: to-binary <in.txt> <out.bin> | to-text <in.bin> <out.txt> | compare [itemCount]");
+            return;
+        }
+        
+        switch (args[0]) {
+            case "to-binary" -> {
+                List<GroceryItem> items = FileHandler.readTextFile(new File(args[1]));
+                BinarySnapshot.write(items, new File(args[2]));
+                System.out.println("Converted " + items.size() + " items to " + args[2]);
+            }
+            case "to-text" -> {
+                List<GroceryItem> items = BinarySnapshot.read(new File(args[1]));
+                FileHandler.writeTextFile(items, new File(args[2]));
+                System.out.println("Converted " + items.size() + " items to " + args[2]);
+            }
+            case "compare" -> compare(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+            default -> System.out.println("Unknown command: " + args[0]);
+        }
+    }
+    
+    // Generate an inventory, write it in both formats and time loading each
+    private static void compare(int itemCount) throws IOException {
+        List<GroceryItem> items = generate(itemCount);
+        File textFile = File.createTempFile("items", ".txt");
+        File binaryFile = File.createTempFile("items", ".bin");
+        textFile.deleteOnExit();
+        binaryFile.deleteOnExit();
+        FileHandler.writeTextFile(items, textFile);
+        BinarySnapshot.write(items, binaryFile);
+        
+        System.out.printf("%,d items: text %,d bytes, binary %,d bytes%n",
+            itemCount, textFile.length(), binaryFile.length());
+        
+        // A few rounds so the later ones run on warmed-up code
+        for (int round = 1; round <= 3; round++) {
+            long start = System.nanoTime();
+            int textCount = FileHandler.readTextFile(textFile).size();
+            long textMillis = (System.nanoTime() - start) / 1_000_000;
+            
+            start = System.nanoTime();
+            int binaryCount = BinarySnapshot.read(binaryFile).size();
+            long binaryMillis = (System.nanoTime() - start) / 1_000_000;
+            
+            System.out.printf("Round %d: text %d ms (%,d items), binary %d ms (%,d items)%n",
+                round, textMillis, textCount, binaryMillis, binaryCount);
+        }
+    }
+    
+    private static List<GroceryItem> generate(int itemCount) {
+        Random random = new Random(42);
+        LocalDate today = LocalDate.now();
+        List<GroceryItem> items = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+            LocalDate purchaseDate = today.minusDays(random.nextInt(30));
+            LocalDate expiryDate = purchaseDate.plusDays(random.nextInt(60));
+            items.add(new GroceryItem("Item" + random.nextInt(5_000), category,
+                purchaseDate, expiryDate, 1 + random.nextInt(20)));
+        }
+        return items;
+    }
+}